@@ -0,0 +1,407 @@
+package com.debuggd.text;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of literals compiled once into an Aho-Corasick automaton, so that searching, counting and replacing all of
+ * them costs a single pass over the input instead of one pass per literal.
+ * <p>
+ * Every literal gets a pattern id, which is its position in the iteration order of the set or map it was built
+ * from (see {@link #pattern(int)}). Instances are immutable and can be shared between threads.
+ */
+public final class AhoCorasick {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final boolean ignoreCase;
+    private final String[] patterns;
+    private final String[] replacements;
+
+    // Trie: per node the sorted child chars and the matching child nodes. The root children live in a dense table.
+    private char[][] childChars = new char[16][];
+    private int[][] childNodes = new int[16][];
+    private int[] depth = new int[16];
+    private int[] terminal = new int[16];
+    private int nodeCount;
+
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+    private int[] fail;
+    private int[] longestMatch;
+    private int[] nextMatch;
+
+    /**
+     * @throws IllegalArgumentException If {@code literals} is {@code null} or contains a {@code null} or empty literal.
+     */
+    public AhoCorasick(Set<String> literals) throws IllegalArgumentException {
+        this(literals, false);
+    }
+
+    /**
+     * @throws IllegalArgumentException If {@code literals} is {@code null} or contains a {@code null} or empty literal,
+     *                                  or, with {@code ignoreCase}, two literals that only differ in case.
+     */
+    public AhoCorasick(Set<String> literals, boolean ignoreCase) throws IllegalArgumentException {
+        if (literals == null) {
+            throw new IllegalArgumentException("parameter 'literals' cannot be null");
+        }
+        this.ignoreCase = ignoreCase;
+        this.patterns = literals.toArray(new String[0]);
+        this.replacements = null;
+        compile();
+    }
+
+    /**
+     * @param replacements literals mapped to the strings {@link #replaceAll(CharSequence)} puts in their place, a
+     *                     {@code null} value deletes the literal.
+     * @throws IllegalArgumentException If {@code replacements} is {@code null} or contains a {@code null} or empty key.
+     */
+    public AhoCorasick(Map<String, String> replacements) throws IllegalArgumentException {
+        this(replacements, false);
+    }
+
+    /**
+     * @param replacements literals mapped to the strings {@link #replaceAll(CharSequence)} puts in their place, a
+     *                     {@code null} value deletes the literal.
+     * @throws IllegalArgumentException If {@code replacements} is {@code null} or contains a {@code null} or empty key,
+     *                                  or, with {@code ignoreCase}, two keys that only differ in case.
+     */
+    public AhoCorasick(Map<String, String> replacements, boolean ignoreCase) throws IllegalArgumentException {
+        if (replacements == null) {
+            throw new IllegalArgumentException("parameter 'replacements' cannot be null");
+        }
+        this.ignoreCase = ignoreCase;
+        this.patterns = new String[replacements.size()];
+        this.replacements = new String[replacements.size()];
+        int id = 0;
+        for (Map.Entry<String, String> entry : replacements.entrySet()) {
+            patterns[id] = entry.getKey();
+            this.replacements[id++] = entry.getValue() == null ? "" : entry.getValue();
+        }
+        compile();
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    public String pattern(int patternId) {
+        return patterns[patternId];
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    public boolean containsAny(CharSequence input) {
+        if (input == null)
+            return false;
+        int state = ROOT;
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = next(state, input.charAt(i));
+            if (longestMatch[state] != NONE)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports every occurrence of every literal, overlapping ones included, ordered by their end offset and, for
+     * occurrences ending at the same offset, from the longest to the shortest.
+     */
+    public Hits indicesOfAll(CharSequence input) {
+        Hits hits = new Hits();
+        if (input == null)
+            return hits;
+        int state = ROOT;
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = next(state, input.charAt(i));
+            for (int node = state; node != NONE; node = nextMatch[node]) {
+                int id = terminal[node];
+                if (id != NONE)
+                    hits.add(i + 1 - patterns[id].length(), id);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Counts every occurrence of every literal, overlapping ones included, which is the sum of
+     * {@link Text#count(String)} over all literals.
+     */
+    public int countAll(CharSequence input) {
+        int count = 0;
+        for (int c : countEach(input))
+            count += c;
+        return count;
+    }
+
+    /**
+     * Counts the occurrences of each literal, overlapping ones included, indexed by pattern id.
+     */
+    public int[] countEach(CharSequence input) {
+        int[] counts = new int[patterns.length];
+        if (input == null)
+            return counts;
+        int state = ROOT;
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = next(state, input.charAt(i));
+            for (int node = state; node != NONE; node = nextMatch[node])
+                if (terminal[node] != NONE)
+                    counts[terminal[node]]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Replaces every literal with the string it was mapped to.
+     *
+     * @throws IllegalStateException If this instance was built from a set and therefore has no replacements.
+     */
+    public String replaceAll(CharSequence input) throws IllegalStateException {
+        requireReplacements();
+        return input == null ? null : replace(input, null).toString();
+    }
+
+    /**
+     * Replaces every literal with {@code replacement}, {@code null} deletes them.
+     */
+    public String replaceAll(CharSequence input, String replacement) {
+        return input == null ? null : replace(input, replacement == null ? "" : replacement).toString();
+    }
+
+    /**
+     * Replaces every literal in {@code text} with the string it was mapped to.
+     *
+     * @throws IllegalStateException If this instance was built from a set and therefore has no replacements.
+     */
+    public Text replaceAll(Text text) throws IllegalStateException {
+        requireReplacements();
+        return text.replaceContent(replace(text, null));
+    }
+
+    /**
+     * Replaces every literal in {@code text} with {@code replacement}, {@code null} deletes them.
+     */
+    public Text replaceAll(Text text, String replacement) {
+        return text.replaceContent(replace(text, replacement == null ? "" : replacement));
+    }
+
+    private void requireReplacements() throws IllegalStateException {
+        if (replacements == null) {
+            throw new IllegalStateException("no replacements, build from a map or pass a replacement");
+        }
+    }
+
+    /**
+     * Leftmost-longest, non-overlapping replacement, which for a single literal is what
+     * {@link Text#replaceAll(String, String)} does. A candidate is settled as soon as no trie path that started at or
+     * before it is still alive; the scan then restarts behind the replaced literal.
+     */
+    private StringBuilder replace(CharSequence input, String fixedReplacement) {
+        int length = input.length();
+        StringBuilder result = new StringBuilder(length + 16);
+        int copied = 0, restart = 0;
+        while (restart < length) {
+            int state = ROOT, bestStart = NONE, bestEnd = NONE, bestId = NONE;
+            int i = restart;
+            for (; i < length; i++) {
+                state = next(state, input.charAt(i));
+                int id = longestMatch[state];
+                if (id != NONE) {
+                    int start = i + 1 - patterns[id].length();
+                    if (bestStart == NONE || start <= bestStart) {
+                        bestStart = start;
+                        bestEnd = i + 1;
+                        bestId = id;
+                    }
+                }
+                if (bestStart != NONE && depth[state] < i + 1 - bestStart)
+                    break;
+            }
+            if (bestStart == NONE)
+                break;
+            result.append(input, copied, bestStart)
+                    .append(fixedReplacement != null ? fixedReplacement : replacements[bestId]);
+            copied = restart = bestEnd;
+        }
+        return result.append(input, copied, length);
+    }
+
+    private int next(int state, char c) {
+        c = fold(c);
+        while (state != ROOT) {
+            int child = child(state, c);
+            if (child != NONE)
+                return child;
+            state = fail[state];
+        }
+        return rootNext[c];
+    }
+
+    private int child(int node, char c) {
+        if (node == ROOT)
+            return rootNext[c] == ROOT ? NONE : rootNext[c];
+        char[] chars = childChars[node];
+        if (chars == null)
+            return NONE;
+        int i = Arrays.binarySearch(chars, c);
+        return i < 0 ? NONE : childNodes[node][i];
+    }
+
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+
+    private void compile() throws IllegalArgumentException {
+        newNode(0);
+        for (int id = 0; id < patterns.length; id++) {
+            String pattern = patterns[id];
+            if (pattern == null || pattern.isEmpty()) {
+                throw new IllegalArgumentException("literals cannot be null or empty");
+            }
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++)
+                node = addChild(node, fold(pattern.charAt(i)));
+            if (terminal[node] != NONE) {
+                throw new IllegalArgumentException("literals '" + patterns[terminal[node]] + "' and '" + pattern
+                        + "' only differ in case");
+            }
+            terminal[node] = id;
+        }
+
+        fail = new int[nodeCount];
+        longestMatch = new int[nodeCount];
+        nextMatch = new int[nodeCount];
+        longestMatch[ROOT] = NONE;
+        nextMatch[ROOT] = NONE;
+
+        // breadth first, every node but the root is queued once
+        int[] queue = new int[nodeCount];
+        int head = 0, tail = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++)
+            if (rootNext[c] != ROOT)
+                queue[tail++] = initFailure(rootNext[c], ROOT);
+        while (head < tail) {
+            int node = queue[head++];
+            char[] chars = childChars[node];
+            if (chars == null)
+                continue;
+            for (int i = 0; i < chars.length; i++) {
+                int f = fail[node];
+                int target;
+                while ((target = child(f, chars[i])) == NONE && f != ROOT)
+                    f = fail[f];
+                queue[tail++] = initFailure(childNodes[node][i], target == NONE ? ROOT : target);
+            }
+        }
+        childChars = Arrays.copyOf(childChars, nodeCount);
+        childNodes = Arrays.copyOf(childNodes, nodeCount);
+        depth = Arrays.copyOf(depth, nodeCount);
+        terminal = Arrays.copyOf(terminal, nodeCount);
+    }
+
+    /**
+     * @return {@code node}, to be queued
+     */
+    private int initFailure(int node, int failure) {
+        fail[node] = failure;
+        longestMatch[node] = terminal[node] != NONE ? terminal[node] : longestMatch[failure];
+        nextMatch[node] = terminal[failure] != NONE ? failure : nextMatch[failure];
+        return node;
+    }
+
+    private int addChild(int node, char c) {
+        int existing = child(node, c);
+        if (existing != NONE)
+            return existing;
+        int created = newNode(depth[node] + 1);
+        if (node == ROOT) {
+            rootNext[c] = created;
+            return created;
+        }
+        char[] chars = childChars[node];
+        if (chars == null) {
+            childChars[node] = new char[]{c};
+            childNodes[node] = new int[]{created};
+        } else {
+            int at = -Arrays.binarySearch(chars, c) - 1;
+            char[] newChars = new char[chars.length + 1];
+            int[] newNodes = new int[chars.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, at);
+            System.arraycopy(childNodes[node], 0, newNodes, 0, at);
+            newChars[at] = c;
+            newNodes[at] = created;
+            System.arraycopy(chars, at, newChars, at + 1, chars.length - at);
+            System.arraycopy(childNodes[node], at, newNodes, at + 1, chars.length - at);
+            childChars[node] = newChars;
+            childNodes[node] = newNodes;
+        }
+        return created;
+    }
+
+    private int newNode(int nodeDepth) {
+        if (nodeCount == depth.length) {
+            int capacity = nodeCount * 2;
+            childChars = Arrays.copyOf(childChars, capacity);
+            childNodes = Arrays.copyOf(childNodes, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+            terminal = Arrays.copyOf(terminal, capacity);
+        }
+        depth[nodeCount] = nodeDepth;
+        terminal[nodeCount] = NONE;
+        return nodeCount++;
+    }
+
+    /**
+     * Offset/pattern-id pairs found by {@link #indicesOfAll(CharSequence)}, kept in two parallel {@code int} arrays.
+     */
+    public static final class Hits {
+
+        private int[] offsets = new int[8];
+        private int[] patternIds = new int[8];
+        private int size;
+
+        private void add(int offset, int patternId) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                patternIds = Arrays.copyOf(patternIds, size * 2);
+            }
+            offsets[size] = offset;
+            patternIds[size++] = patternId;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int offset(int index) {
+            checkIndex(index);
+            return offsets[index];
+        }
+
+        public int patternId(int index) {
+            checkIndex(index);
+            return patternIds[index];
+        }
+
+        public int[] offsets() {
+            return Arrays.copyOf(offsets, size);
+        }
+
+        public int[] patternIds() {
+            return Arrays.copyOf(patternIds, size);
+        }
+
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+}
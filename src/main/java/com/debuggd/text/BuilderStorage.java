@@ -0,0 +1,322 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.TextFilter;
+
+/**
+ * Flat storage in a single {@link StringBuilder}.
+ * <p>
+ * The text is sb[windowStart, windowEnd). Deleting at either end only moves these bounds, edits in the middle first
+ * cut the builder down to the window (see {@link #edit()}). A shared builder is never written to, whoever edits it
+ * first takes a private copy of its window (see {@link #owned()}). A builder of the caller (see
+ * {@link #ofCaller(StringBuilder)}) is never shared, so that edits keep writing through to it.
+ */
+final class BuilderStorage extends EditableStorage {
+
+    private StringBuilder sb;
+    private int windowStart;
+    private int windowEnd;
+    private boolean shared;
+    private boolean callersBuilder;
+
+    BuilderStorage(StringBuilder sb) {
+        setContent(sb);
+    }
+
+    /**
+     * Storage over the builder of the caller, which the caller may keep editing and which sees the edits of the text.
+     */
+    static BuilderStorage ofCaller(StringBuilder sb) {
+        BuilderStorage storage = new BuilderStorage(sb);
+        storage.callersBuilder = true;
+        return storage;
+    }
+
+    private BuilderStorage(BuilderStorage source) {
+        sb = source.sb;
+        windowStart = source.windowStart;
+        windowEnd = source.windowEnd;
+        shared = true;
+    }
+
+    @Override
+    int length() {
+        return windowEnd - windowStart;
+    }
+
+    @Override
+    char charAt(int index) {
+        return sb.charAt(windowStart + index);
+    }
+
+    @Override
+    int indexOf(String str, int from) {
+        int i = find(str, windowStart + from);
+        return i == -1 ? -1 : i - windowStart;
+    }
+
+    /**
+     * Absolute index of the first occurrence of {@code str} in the window at or after the absolute index
+     * {@code from}, or -1. Only a shared builder has chars behind the window (see {@link #delete(int, int)}), a
+     * first hit that reaches into them means there is none inside.
+     */
+    private int find(String str, int from) {
+        int i = sb.indexOf(str, from);
+        return i == -1 || i + str.length() > windowEnd ? -1 : i;
+    }
+
+    @Override
+    int indexOf(Searcher searcher, int from, int to, CharSequence text) {
+        int i = searcher.find(sb, windowStart + from, windowStart + to);
+        return i == -1 ? -1 : i - windowStart;
+    }
+
+    @Override
+    int lastIndexOf(String str) {
+        int i = sb.lastIndexOf(str, windowEnd - str.length());
+        return i < windowStart ? -1 : i - windowStart;
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        sb.getChars(windowStart + start, windowStart + end, dst, dstBegin);
+    }
+
+    @Override
+    String substring(int start, int end) {
+        return sb.substring(windowStart + start, windowStart + end);
+    }
+
+    @Override
+    void delete(int start, int end) {
+        if (start == 0 && end == length()) {
+            // appends go to the start of the builder again
+            windowStart = windowEnd = 0;
+            if (!shared)
+                sb.setLength(0);
+        } else if (start == 0) {
+            windowStart += end;
+        } else if (end == length()) {
+            // cutting an owned builder is as cheap as moving the bound and keeps searches out of the cut chars
+            windowEnd = windowStart + start;
+            if (!shared)
+                sb.setLength(windowEnd);
+        } else if (start < length() - end) {
+            // the head is shorter than the tail, move it over the deleted range
+            owned();
+            for (int i = windowStart + start - 1; i >= windowStart; i--)
+                sb.setCharAt(i + end - start, sb.charAt(i));
+            windowStart += end - start;
+        } else {
+            appendable().delete(windowStart + start, windowStart + end);
+            windowEnd -= end - start;
+        }
+    }
+
+    @Override
+    void insert(int offset, String str) {
+        edit().insert(offset, str);
+        windowEnd = sb.length();
+    }
+
+    @Override
+    void replace(int start, int end, String str) {
+        edit().replace(start, end, str);
+        windowEnd = sb.length();
+    }
+
+    @Override
+    void append(char c) {
+        appendable().append(c);
+        windowEnd = sb.length();
+    }
+
+    @Override
+    void append(CharSequence str) {
+        appendable().append(str);
+        windowEnd = sb.length();
+    }
+
+    @Override
+    void setCharAt(int index, char c) {
+        owned().setCharAt(windowStart + index, c);
+    }
+
+    @Override
+    EditableStorage map(CharMapping mapping) {
+        owned();
+        for (int i = windowStart; i < windowEnd; i++)
+            sb.setCharAt(i, mapping.map(sb.charAt(i)));
+        return this;
+    }
+
+    /**
+     * Single read/write pass that writes the kept chars to the start of the builder.
+     */
+    @Override
+    void filter(TextFilter filter) {
+        owned();
+        int write = 0;
+        for (int read = windowStart; read < windowEnd; read++) {
+            char c = sb.charAt(read);
+            if (filter.accept(c)) {
+                if (write != read)
+                    sb.setCharAt(write, c);
+                write++;
+            }
+        }
+        truncate(write);
+    }
+
+    /**
+     * Rewrites the text in one forward scan. Replacements that do not grow the text are written in place behind
+     * the read position, longer ones (and shared builders) are emitted into a fresh builder.
+     */
+    @Override
+    void replaceAll(String what, String with) {
+        int hit = find(what, windowStart);
+        if (hit == -1)
+            return;
+
+        int read = windowStart;
+        if (!shared && with.length() <= what.length()) {
+            int write = 0;
+            while (hit != -1) {
+                write = moveChars(read, hit, write);
+                for (int i = 0; i < with.length(); i++)
+                    sb.setCharAt(write++, with.charAt(i));
+                read = hit + what.length();
+                hit = find(what, read);
+            }
+            truncate(moveChars(read, windowEnd, write));
+        } else {
+            StringBuilder rewritten = new StringBuilder(length() + 2 * (with.length() - what.length()) + 16);
+            while (hit != -1) {
+                rewritten.append(sb, read, hit).append(with);
+                read = hit + what.length();
+                hit = find(what, read);
+            }
+            setContent(rewritten.append(sb, read, windowEnd));
+        }
+    }
+
+    /**
+     * Copies the chars in {@code [from, to)} down to {@code dest} (which must not be greater than {@code from})
+     * and returns the index behind the last written char.
+     */
+    private int moveChars(int from, int to, int dest) {
+        if (dest == from)
+            return to;
+        for (int i = from; i < to; i++)
+            sb.setCharAt(dest++, sb.charAt(i));
+        return dest;
+    }
+
+    /**
+     * Ends an in-place rewrite that wrote the new text to the start of the builder.
+     */
+    private void truncate(int length) {
+        sb.setLength(length);
+        windowStart = 0;
+        windowEnd = length;
+    }
+
+    @Override
+    TextStorage setContent(StringBuilder content) {
+        sb = content;
+        windowStart = 0;
+        windowEnd = content.length();
+        shared = false;
+        callersBuilder = false;
+        return this;
+    }
+
+    @Override
+    TextStorage setContent(char[] chars, int start, int end) {
+        if (shared)
+            return setContent(new StringBuilder(end - start + 16).append(chars, start, end - start));
+        sb.setLength(0);
+        sb.append(chars, start, end - start);
+        windowStart = 0;
+        windowEnd = sb.length();
+        return this;
+    }
+
+    /**
+     * A shared builder stays as it is, trimming it would mean copying it.
+     */
+    @Override
+    void trimToSize() {
+        if (!shared)
+            edit().trimToSize();
+    }
+
+    @Override
+    TextStorage reset(CharSequence content) {
+        if (shared)
+            return setContent(new StringBuilder(content.length() + 16).append(content));
+        sb.setLength(0);
+        sb.append(content);
+        windowStart = 0;
+        windowEnd = sb.length();
+        return this;
+    }
+
+    /**
+     * The builder of the caller is copied right away, it may change under a copy that shared it.
+     */
+    @Override
+    TextStorage share() {
+        if (callersBuilder)
+            return new BuilderStorage(new StringBuilder(length() + 16).append(sb, windowStart, windowEnd));
+        shared = true;
+        return new BuilderStorage(this);
+    }
+
+    @Override
+    RopeStorage toRope() {
+        return new RopeStorage(this);
+    }
+
+    @Override
+    EditableStorage forScatteredEdits() {
+        return length() >= ROPE_THRESHOLD ? toRope() : this;
+    }
+
+    /**
+     * Cuts the builder down to the window, so that it can be edited with indices relative to the text.
+     */
+    private StringBuilder edit() {
+        owned();
+        if (windowEnd != sb.length())
+            sb.setLength(windowEnd);
+        if (windowStart != 0) {
+            sb.delete(0, windowStart);
+            windowStart = 0;
+        }
+        windowEnd = sb.length();
+        return sb;
+    }
+
+    /**
+     * Drops whatever is left in the builder behind the window, the start of the window may stay where it is.
+     */
+    private StringBuilder appendable() {
+        owned();
+        if (windowEnd != sb.length())
+            sb.setLength(windowEnd);
+        return sb;
+    }
+
+    /**
+     * Replaces a shared builder with a private copy of the window, so that it can be written to.
+     */
+    private StringBuilder owned() {
+        if (shared) {
+            sb = new StringBuilder(length() + 16).append(sb, windowStart, windowEnd);
+            windowStart = 0;
+            windowEnd = sb.length();
+            shared = false;
+        }
+        return sb;
+    }
+}
@@ -0,0 +1,97 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.TextFilter;
+
+/**
+ * A {@link TextStorage} that can be edited. A read-only one is replaced by one of these through
+ * {@link TextStorage#writable()} before the first edit.
+ */
+abstract class EditableStorage extends TextStorage {
+
+    @FunctionalInterface
+    interface CharMapping {
+        char map(char c);
+    }
+
+    @Override
+    final EditableStorage writable() {
+        return this;
+    }
+
+    abstract void delete(int start, int end);
+
+    abstract void insert(int offset, String str);
+
+    abstract void replace(int start, int end, String str);
+
+    abstract void append(char c);
+
+    abstract void append(CharSequence str);
+
+    abstract void setCharAt(int index, char c);
+
+    /**
+     * @return the storage that holds the mapped text, which is a new one if this one cannot hold the mapped chars
+     */
+    abstract EditableStorage map(CharMapping mapping);
+
+    EditableStorage toLowerCase() {
+        return map(Character::toLowerCase);
+    }
+
+    EditableStorage toUpperCase() {
+        return map(Character::toUpperCase);
+    }
+
+    /**
+     * Turns every space into a plain one and keeps only the first of a run, see {@link Text#normalizeWhiteSpaces()}.
+     *
+     * @return the storage that holds the result, like {@link #map(CharMapping)}
+     */
+    EditableStorage normalizeWhiteSpaces() {
+        EditableStorage storage = map(c -> Text.isSpace(c) ? ' ' : c);
+        storage.filter(new TextFilter() {
+            private boolean afterSpace;
+
+            @Override
+            public boolean accept(char c) {
+                boolean keep = c != ' ' || !afterSpace;
+                afterSpace = c == ' ';
+                return keep;
+            }
+        });
+        return storage;
+    }
+
+    /**
+     * Keeps the chars accepted by {@code filter}.
+     */
+    abstract void filter(TextFilter filter);
+
+    /**
+     * Replaces every non-overlapping occurrence of {@code what}, scanning from the left.
+     */
+    abstract void replaceAll(String what, String with);
+
+    /**
+     * Compact storage cannot hold every char, it has to be replaced by {@link #inflate()} before others are added.
+     */
+    boolean canHold(char c) {
+        return true;
+    }
+
+    boolean canHold(CharSequence str) {
+        return true;
+    }
+
+    EditableStorage inflate() {
+        return this;
+    }
+
+    /**
+     * The storage that should take an insert, delete or replace in the middle of the text.
+     */
+    EditableStorage forScatteredEdits() {
+        return this;
+    }
+}
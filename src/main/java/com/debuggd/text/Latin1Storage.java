@@ -0,0 +1,478 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.CharClass;
+import com.debuggd.text.filter.TextFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact storage for texts whose chars are all Latin-1 (up to U+00FF), one byte per char like the compact strings
+ * of the JDK. Text replaces it with flat storage (see {@link #inflate()}) before a wider char is added, a mapping
+ * that produces one inflates on its own.
+ * <p>
+ * The text is bytes[start, end). Deleting at either end only moves these bounds. A shared array is never written
+ * to, whoever edits it first takes a private copy (see {@link #owned()}).
+ */
+final class Latin1Storage extends EditableStorage {
+
+    private static final char MAX_LATIN1 = '\u00FF';
+    private static final char[] LOWER = table(Character::toLowerCase);
+    private static final char[] UPPER = table(Character::toUpperCase);
+    /**
+     * 1 for the chars {@link Text#isSpace(char)} accepts, 0 for the others.
+     */
+    private static final byte[] SPACES = new byte[MAX_LATIN1 + 1];
+
+    static {
+        for (char c = 0; c <= MAX_LATIN1; c++)
+            SPACES[c] = (byte) (CharClass.SPACES.contains(c) ? 1 : 0);
+    }
+
+    private byte[] bytes;
+    private int start;
+    private int end;
+    private boolean shared;
+
+    private Latin1Storage(byte[] bytes) {
+        this.bytes = bytes;
+        end = bytes.length;
+    }
+
+    private Latin1Storage(Latin1Storage source) {
+        bytes = source.bytes;
+        start = source.start;
+        end = source.end;
+        shared = true;
+    }
+
+    /**
+     * Compact storage for {@code str} if all its chars are Latin-1, flat storage otherwise.
+     */
+    static EditableStorage of(String str) {
+        if (!isLatin1(str))
+            return new BuilderStorage(new StringBuilder(str));
+        return new Latin1Storage(str.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static char[] table(CharMapping mapping) {
+        char[] table = new char[MAX_LATIN1 + 1];
+        for (char c = 0; c <= MAX_LATIN1; c++)
+            table[c] = mapping.map(c);
+        return table;
+    }
+
+    /**
+     * Compact storage that takes over {@code bytes}.
+     */
+    static Latin1Storage wrap(byte[] bytes) {
+        return new Latin1Storage(bytes);
+    }
+
+    private static boolean isLatin1(CharSequence str) {
+        for (int i = 0, length = str.length(); i < length; i++)
+            if (str.charAt(i) > MAX_LATIN1)
+                return false;
+        return true;
+    }
+
+    @Override
+    int length() {
+        return end - start;
+    }
+
+    @Override
+    char charAt(int index) {
+        return (char) (bytes[start + index] & 0xFF);
+    }
+
+    @Override
+    int indexOf(String str, int from) {
+        from = Math.max(from, 0);
+        if (str.isEmpty())
+            return Math.min(from, length());
+        char first = str.charAt(0);
+        if (first > MAX_LATIN1)
+            return -1;
+        byte b = (byte) first;
+        for (int i = start + from, last = end - str.length(); i <= last; i++)
+            if (bytes[i] == b && regionMatches(i, str))
+                return i - start;
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(String str) {
+        if (str.isEmpty())
+            return length();
+        for (int i = end - str.length(); i >= start; i--)
+            if (regionMatches(i, str))
+                return i - start;
+        return -1;
+    }
+
+    @Override
+    int indexOf(char c, int from) {
+        if (c > MAX_LATIN1)
+            return -1;
+        byte b = (byte) c;
+        for (int i = start + from; i < end; i++)
+            if (bytes[i] == b)
+                return i - start;
+        return -1;
+    }
+
+    @Override
+    int count(char c) {
+        if (c > MAX_LATIN1)
+            return 0;
+        byte b = (byte) c;
+        int count = 0;
+        for (int i = start; i < end; i++)
+            if (bytes[i] == b)
+                count++;
+        return count;
+    }
+
+    /**
+     * Does {@code str} occur at the absolute index {@code offset}? A char that is not Latin-1 never matches.
+     */
+    private boolean regionMatches(int offset, String str) {
+        for (int i = 0; i < str.length(); i++)
+            if ((bytes[offset + i] & 0xFF) != str.charAt(i))
+                return false;
+        return true;
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        for (int i = this.start + start; i < this.start + end; i++)
+            dst[dstBegin++] = (char) (bytes[i] & 0xFF);
+    }
+
+    void getBytes(int start, int end, byte[] dst, int dstBegin) {
+        System.arraycopy(bytes, this.start + start, dst, dstBegin, end - start);
+    }
+
+    @Override
+    String substring(int start, int end) {
+        return new String(bytes, this.start + start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    void delete(int start, int end) {
+        if (start == 0 && end == length()) {
+            // appends go to the start of the array again
+            this.start = this.end = 0;
+        } else if (start == 0) {
+            this.start += end;
+        } else if (end == length()) {
+            this.end = this.start + start;
+        } else {
+            owned();
+            System.arraycopy(bytes, this.start + end, bytes, this.start + start, length() - end);
+            this.end -= end - start;
+        }
+    }
+
+    @Override
+    void insert(int offset, String str) {
+        replace(offset, offset, str);
+    }
+
+    /**
+     * Moves the tail behind the replaced range in place if the array is private and has room, copies the text to
+     * an array of the new length otherwise.
+     */
+    @Override
+    void replace(int start, int end, String str) {
+        int tail = length() - end;
+        int length = start + str.length() + tail;
+        if (shared || this.start + length > bytes.length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, this.start, copy, 0, start);
+            System.arraycopy(bytes, this.start + end, copy, start + str.length(), tail);
+            bytes = copy;
+            this.start = 0;
+            shared = false;
+        } else {
+            System.arraycopy(bytes, this.start + end, bytes, this.start + start + str.length(), tail);
+        }
+        write(bytes, this.start + start, str);
+        this.end = this.start + length;
+    }
+
+    private static void write(byte[] bytes, int offset, CharSequence str) {
+        for (int i = 0, length = str.length(); i < length; i++)
+            bytes[offset + i] = (byte) str.charAt(i);
+    }
+
+    @Override
+    void append(char c) {
+        appendable(1)[end++] = (byte) c;
+    }
+
+    @Override
+    void append(CharSequence str) {
+        write(appendable(str.length()), end, str);
+        end += str.length();
+    }
+
+    /**
+     * Makes room for {@code n} more bytes behind the text, growing the array like {@link StringBuilder} does.
+     */
+    private byte[] appendable(int n) {
+        if (shared || end + n > bytes.length) {
+            int length = length();
+            byte[] copy = new byte[Math.max(length + n, 2 * length + 2)];
+            System.arraycopy(bytes, start, copy, 0, length);
+            bytes = copy;
+            start = 0;
+            end = length;
+            shared = false;
+        }
+        return bytes;
+    }
+
+    @Override
+    void setCharAt(int index, char c) {
+        owned()[start + index] = (byte) c;
+    }
+
+    /**
+     * Maps in place until the mapping produces a char that is not Latin-1, then continues in flat storage.
+     */
+    @Override
+    EditableStorage map(CharMapping mapping) {
+        owned();
+        for (int i = start; i < end; i++) {
+            char mapped = mapping.map((char) (bytes[i] & 0xFF));
+            if (mapped > MAX_LATIN1) {
+                StringBuilder sb = new StringBuilder(length() + 16).append(substring(0, i - start)).append(mapped);
+                while (++i < end)
+                    sb.append(mapping.map((char) (bytes[i] & 0xFF)));
+                return new BuilderStorage(sb);
+            }
+            bytes[i] = (byte) mapped;
+        }
+        return this;
+    }
+
+    @Override
+    EditableStorage toLowerCase() {
+        return map(LOWER);
+    }
+
+    /**
+     * Inflates for '\u00B5' and '\u00FF', whose upper case is not Latin-1.
+     */
+    @Override
+    EditableStorage toUpperCase() {
+        return map(UPPER);
+    }
+
+    /**
+     * Looks every char up in {@code table} and falls back to {@link #map(CharMapping)} at the first one that maps to
+     * a wider char. Mapping the chars before it again does not change them, since case mapping is idempotent.
+     */
+    private EditableStorage map(char[] table) {
+        owned();
+        for (int i = start; i < end; i++) {
+            char mapped = table[bytes[i] & 0xFF];
+            if (mapped > MAX_LATIN1)
+                return map(c -> table[c]);
+            bytes[i] = (byte) mapped;
+        }
+        return this;
+    }
+
+    /**
+     * One pass that stores every char, a space for any kind of space, and advances the write index unless it is a
+     * space after a space.
+     */
+    @Override
+    EditableStorage normalizeWhiteSpaces() {
+        owned();
+        int write = start;
+        int afterSpace = 0;
+        for (int read = start; read < end; read++) {
+            byte b = bytes[read];
+            int space = SPACES[b & 0xFF];
+            bytes[write] = space == 0 ? b : (byte) ' ';
+            write += 1 - (space & afterSpace);
+            afterSpace = space;
+        }
+        end = write;
+        return this;
+    }
+
+    @Override
+    void filter(TextFilter filter) {
+        owned();
+        if (filter instanceof CharClass) {
+            end = retain((CharClass) filter, bytes, start, end);
+            return;
+        }
+        int write = start;
+        for (int read = start; read < end; read++)
+            if (filter.accept((char) (bytes[read] & 0xFF)))
+                bytes[write++] = bytes[read];
+        end = write;
+    }
+
+    /**
+     * Moves the chars of {@code chars} in {@code bytes[from, to)} to the front of the range, keeping their order.
+     * Every byte is stored and only the write index depends on the class, so there is no branch that could be
+     * mispredicted when kept and dropped chars alternate.
+     *
+     * @return the index behind the last kept char
+     */
+    private static int retain(CharClass chars, byte[] bytes, int from, int to) {
+        int write = from;
+        for (int read = from; read < to; read++) {
+            byte b = bytes[read];
+            bytes[write] = b;
+            write += chars.latin1Flag(b);
+        }
+        return write;
+    }
+
+    /**
+     * Rewrites the text in one forward scan, in place if it does not grow and the array is private. A growing text
+     * is counted first, so that the new array has the right length.
+     */
+    @Override
+    void replaceAll(String what, String with) {
+        int hit = indexOf(what, 0);
+        if (hit == -1)
+            return;
+
+        int length = length();
+        if (with.length() > what.length())
+            for (int i = hit; i != -1; i = indexOf(what, i + what.length()))
+                length += with.length() - what.length();
+        byte[] target = shared || length > length() ? new byte[length] : bytes;
+        int write = target == bytes ? start : 0;
+        int read = 0;
+        while (hit != -1) {
+            System.arraycopy(bytes, start + read, target, write, hit - read);
+            write += hit - read;
+            write(target, write, with);
+            write += with.length();
+            read = hit + what.length();
+            hit = indexOf(what, read);
+        }
+        System.arraycopy(bytes, start + read, target, write, length() - read);
+        write += length() - read;
+        if (target != bytes) {
+            bytes = target;
+            start = 0;
+            shared = false;
+        }
+        end = write;
+    }
+
+    @Override
+    TextStorage setContent(StringBuilder content) {
+        if (!isLatin1(content))
+            return new BuilderStorage(content);
+        bytes = content.toString().getBytes(StandardCharsets.ISO_8859_1);
+        start = 0;
+        end = bytes.length;
+        shared = false;
+        return this;
+    }
+
+    /**
+     * Reuses the array if it is private and large enough.
+     */
+    @Override
+    TextStorage setContent(char[] chars, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (chars[i] > MAX_LATIN1)
+                return new BuilderStorage(new StringBuilder(end - start + 16).append(chars, start, end - start));
+        byte[] bytes = writable(end - start);
+        for (int i = start; i < end; i++)
+            bytes[i - start] = (byte) chars[i];
+        return this;
+    }
+
+    @Override
+    TextStorage reset(CharSequence content) {
+        if (!isLatin1(content))
+            return new BuilderStorage(new StringBuilder(content.length() + 16).append(content));
+        write(writable(content.length()), 0, content);
+        return this;
+    }
+
+    /**
+     * Makes the array private and at least {@code length} long for new content of that length.
+     */
+    private byte[] writable(int length) {
+        if (shared || bytes.length < length) {
+            bytes = new byte[length];
+            shared = false;
+        }
+        start = 0;
+        end = length;
+        return bytes;
+    }
+
+    @Override
+    boolean canHold(char c) {
+        return c <= MAX_LATIN1;
+    }
+
+    @Override
+    boolean canHold(CharSequence str) {
+        return isLatin1(str);
+    }
+
+    @Override
+    EditableStorage inflate() {
+        return new BuilderStorage(new StringBuilder(length() + 16).append(substring(0, length())));
+    }
+
+    @Override
+    void trimToSize() {
+        if (!shared && bytes.length != length()) {
+            bytes = Arrays.copyOfRange(bytes, start, end);
+            start = 0;
+            end = bytes.length;
+        }
+    }
+
+    @Override
+    EditableStorage slice(int start, int end) {
+        return new Latin1Storage(Arrays.copyOfRange(bytes, this.start + start, this.start + end));
+    }
+
+    @Override
+    TextStorage share() {
+        shared = true;
+        return new Latin1Storage(this);
+    }
+
+    @Override
+    RopeStorage toRope() {
+        return new RopeStorage(this);
+    }
+
+    @Override
+    EditableStorage forScatteredEdits() {
+        return length() >= ROPE_THRESHOLD ? toRope() : this;
+    }
+
+    /**
+     * Replaces a shared array with a private copy of the text, so that it can be written to.
+     */
+    private byte[] owned() {
+        if (shared) {
+            bytes = Arrays.copyOfRange(bytes, start, end);
+            start = 0;
+            end = bytes.length;
+            shared = false;
+        }
+        return bytes;
+    }
+}
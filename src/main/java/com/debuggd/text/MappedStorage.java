@@ -0,0 +1,325 @@
+package com.debuggd.text;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only storage over a memory-mapped ISO-8859-1 or UTF-8 file. The bytes are decoded a block at a time when
+ * they are read, the heap holds one block and, for UTF-8, the byte offset and char index at which each block
+ * starts. Opening a UTF-8 file scans it once to build that index.
+ * <p>
+ * Malformed UTF-8 decodes to one U+FFFD per byte that does not start a valid sequence.
+ */
+final class MappedStorage extends TextStorage {
+
+    // a file is mapped in segments of 2^SEGMENT_BITS bytes
+    private static final int SEGMENT_BITS = 30;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    static final int BLOCK_LENGTH = 1 << 16;
+
+    private final ByteBuffer[] segments;
+    private final long size;
+    private final boolean utf8;
+    private final int length;
+    // UTF-8 only: block i is bytes [blockBytes[i], blockBytes[i + 1]) and starts at char blockChars[i]
+    private final long[] blockBytes;
+    private final int[] blockChars;
+
+    private final byte[] bytes = new byte[BLOCK_LENGTH + 3];
+    private final char[] block = new char[BLOCK_LENGTH + 3];
+    private int blockStart;
+    private int blockEnd;
+
+    private MappedStorage(ByteBuffer[] segments, long size, Charset charset) {
+        this.segments = segments;
+        this.size = size;
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (utf8) {
+            int blocks = (int) ((size + BLOCK_LENGTH - 1) / BLOCK_LENGTH);
+            blockBytes = new long[blocks + 1];
+            blockChars = new int[blocks + 1];
+            long chars = 0;
+            for (int i = 0; i < blocks; i++) {
+                blockChars[i] = (int) chars;
+                int limit = readBlock(i);
+                int p = 0;
+                // sequences that start in this block, the next one starts behind them
+                for (int end = (int) ((long) (i + 1) * BLOCK_LENGTH - blockBytes[i]); p < end && p < limit; ) {
+                    int sequence = sequenceLength(bytes, p, limit);
+                    p += sequence;
+                    chars += sequence == 4 ? 2 : 1;
+                }
+                blockBytes[i + 1] = blockBytes[i] + p;
+                if (chars > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException("more than " + Integer.MAX_VALUE + " chars");
+            }
+            blockChars[blocks] = (int) chars;
+            length = (int) chars;
+        } else {
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("more than " + Integer.MAX_VALUE + " chars");
+            blockBytes = null;
+            blockChars = null;
+            length = (int) size;
+        }
+    }
+
+    private MappedStorage(MappedStorage source) {
+        segments = source.segments;
+        size = source.size;
+        utf8 = source.utf8;
+        length = source.length;
+        blockBytes = source.blockBytes;
+        blockChars = source.blockChars;
+    }
+
+    static MappedStorage map(Path file, Charset charset) throws IOException {
+        if (!charset.equals(StandardCharsets.UTF_8) && !charset.equals(StandardCharsets.ISO_8859_1))
+            throw new IllegalArgumentException("unsupported charset " + charset);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_BITS;
+                long length = Math.min(size - start, 1L << SEGMENT_BITS);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            return new MappedStorage(segments, size, charset);
+        }
+    }
+
+    /**
+     * Copies the bytes of UTF-8 block {@code i} to {@link #bytes}, together with the up to three bytes behind it
+     * that a sequence starting in it may take. Returns the number of bytes copied.
+     */
+    private int readBlock(int i) {
+        long start = blockBytes[i];
+        int n = (int) (Math.min(size, (long) (i + 1) * BLOCK_LENGTH + 3) - start);
+        read(start, n);
+        return n;
+    }
+
+    private void read(long start, int n) {
+        for (int done = 0; done < n; ) {
+            long position = start + done;
+            ByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)].duplicate();
+            segment.position((int) (position & SEGMENT_MASK));
+            int chunk = Math.min(n - done, segment.remaining());
+            segment.get(bytes, done, chunk);
+            done += chunk;
+        }
+    }
+
+    private static boolean isContinuation(byte[] bytes, int p, int limit) {
+        return p < limit && (bytes[p] & 0xC0) == 0x80;
+    }
+
+    /**
+     * Length of the UTF-8 sequence at {@code bytes[p]}, 1 for a byte that does not start a valid one.
+     */
+    private static int sequenceLength(byte[] bytes, int p, int limit) {
+        int b = bytes[p] & 0xFF;
+        if (b < 0x80)
+            return 1;
+        if ((b & 0xE0) == 0xC0)
+            return isContinuation(bytes, p + 1, limit) ? 2 : 1;
+        if ((b & 0xF0) == 0xE0)
+            return isContinuation(bytes, p + 1, limit) && isContinuation(bytes, p + 2, limit) ? 3 : 1;
+        if ((b & 0xF8) == 0xF0 && isContinuation(bytes, p + 1, limit) && isContinuation(bytes, p + 2, limit)
+                && isContinuation(bytes, p + 3, limit)) {
+            int codePoint = codePoint(bytes, p, 4);
+            return codePoint >= 0x10000 && codePoint <= Character.MAX_CODE_POINT ? 4 : 1;
+        }
+        return 1;
+    }
+
+    private static int codePoint(byte[] bytes, int p, int sequenceLength) {
+        int codePoint = bytes[p] & (0xFF >> (sequenceLength + 1));
+        for (int i = 1; i < sequenceLength; i++)
+            codePoint = codePoint << 6 | bytes[p + i] & 0x3F;
+        return codePoint;
+    }
+
+    /**
+     * Decodes the block that contains {@code index}.
+     */
+    private void load(int index) {
+        int n = 0;
+        if (utf8) {
+            // only an empty last block repeats a value in blockChars, and no index < length falls into it
+            int i = Arrays.binarySearch(blockChars, index);
+            if (i < 0)
+                i = -i - 2;
+            int limit = readBlock(i);
+            for (int p = 0, end = (int) (blockBytes[i + 1] - blockBytes[i]); p < end; ) {
+                int b = bytes[p];
+                if (b >= 0) {
+                    block[n++] = (char) b;
+                    p++;
+                    continue;
+                }
+                int sequence = sequenceLength(bytes, p, limit);
+                if (sequence == 1) {
+                    block[n++] = '\uFFFD';
+                } else if (sequence == 4) {
+                    int codePoint = codePoint(bytes, p, 4);
+                    block[n++] = Character.highSurrogate(codePoint);
+                    block[n++] = Character.lowSurrogate(codePoint);
+                } else {
+                    block[n++] = (char) codePoint(bytes, p, sequence);
+                }
+                p += sequence;
+            }
+            blockStart = blockChars[i];
+        } else {
+            blockStart = index / BLOCK_LENGTH * BLOCK_LENGTH;
+            n = Math.min(BLOCK_LENGTH, length - blockStart);
+            read(blockStart, n);
+            for (int i = 0; i < n; i++)
+                block[i] = (char) (bytes[i] & 0xFF);
+        }
+        blockEnd = blockStart + n;
+    }
+
+    @Override
+    int length() {
+        return length;
+    }
+
+    @Override
+    char charAt(int index) {
+        if (index < blockStart || index >= blockEnd)
+            load(index);
+        return block[index - blockStart];
+    }
+
+    /**
+     * Looks for the first char of {@code str} in the decoded block, candidates that cross into the next block are
+     * checked through {@link #charAt(int)}, which decodes that block instead.
+     */
+    @Override
+    int indexOf(String str, int from) {
+        from = Math.max(from, 0);
+        if (str.isEmpty())
+            return Math.min(from, length);
+        char first = str.charAt(0);
+        int last = length - str.length();
+        int i = from;
+        blocks:
+        while (i <= last) {
+            if (i < blockStart || i >= blockEnd)
+                load(i);
+            int end = Math.min(blockEnd, last + 1);
+            for (; i < end; i++) {
+                if (block[i - blockStart] == first) {
+                    if (i + str.length() <= blockEnd) {
+                        if (blockMatches(i - blockStart, str))
+                            return i;
+                    } else if (regionMatches(i++, str)) {
+                        return i - 1;
+                    } else {
+                        continue blocks;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    private boolean blockMatches(int offset, String str) {
+        for (int i = 1; i < str.length(); i++)
+            if (block[offset + i] != str.charAt(i))
+                return false;
+        return true;
+    }
+
+    @Override
+    int lastIndexOf(String str) {
+        if (str.isEmpty())
+            return length;
+        char first = str.charAt(0);
+        for (int i = length - str.length(); i >= 0; i--)
+            if (charAt(i) == first && regionMatches(i, str))
+                return i;
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, String str) {
+        for (int i = 1; i < str.length(); i++)
+            if (charAt(offset + i) != str.charAt(i))
+                return false;
+        return true;
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        while (start < end) {
+            if (start < blockStart || start >= blockEnd)
+                load(start);
+            int n = Math.min(end, blockEnd) - start;
+            System.arraycopy(block, start - blockStart, dst, dstBegin, n);
+            start += n;
+            dstBegin += n;
+        }
+    }
+
+    @Override
+    String substring(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * New content goes to the heap, the file stays as it is.
+     */
+    @Override
+    TextStorage setContent(StringBuilder content) {
+        return new BuilderStorage(content);
+    }
+
+    @Override
+    TextStorage setContent(char[] chars, int start, int end) {
+        return new BuilderStorage(new StringBuilder(end - start).append(chars, start, end - start));
+    }
+
+    @Override
+    TextStorage reset(CharSequence content) {
+        return new BuilderStorage(new StringBuilder(content));
+    }
+
+    /**
+     * The mapped bytes never change, so the copy reads them too (through a block of its own).
+     */
+    @Override
+    TextStorage share() {
+        return new MappedStorage(this);
+    }
+
+    /**
+     * A view with its own decoded {@link #block}.
+     */
+    @Override
+    TextStorage reader() {
+        return share();
+    }
+
+    @Override
+    RopeStorage toRope() {
+        return new RopeStorage(this);
+    }
+
+    /**
+     * The first edit moves the text into a rope, the file stays as it is.
+     */
+    @Override
+    EditableStorage writable() {
+        return toRope();
+    }
+}
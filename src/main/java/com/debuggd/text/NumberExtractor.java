@@ -0,0 +1,200 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.CharClass;
+
+import java.util.Arrays;
+
+/**
+ * Finds the numbers in a text in one scan and keeps their values as primitives, e.g. to pull the metrics out of a
+ * log line. A number is a run of digits ({@link CharClass#DIGITS}), optionally with a fraction and an exponent as
+ * parsed by {@link Numbers#parseDouble(CharSequence, int, int)}, and with the minus in front of it unless that
+ * follows a letter or digit: {@code "took -3 ms"} has -3, {@code "2024-05-01"} has 2024, 5 and 1.
+ * <p>
+ * The buffers grow as needed and are kept by the next {@link #extract(CharSequence)}, so an extractor that is reused
+ * for every line stops allocating once it has seen the line with the most numbers. Like {@link TextPool}, an
+ * extractor is not thread-safe.
+ */
+public final class NumberExtractor {
+
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private double[] doubles = new double[8];
+    private long[] longs = new long[8];
+    private boolean[] integral = new boolean[8];
+    private int size;
+
+    public NumberExtractor extract(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException("parameter 'text' cannot be null");
+        }
+        return extract(text, 0, text.length());
+    }
+
+    /**
+     * Replaces the numbers found so far with those in {@code text[from, to)}.
+     *
+     * @throws IllegalArgumentException If {@code text} is {@code null}.
+     */
+    public NumberExtractor extract(CharSequence text, int from, int to) throws IllegalArgumentException {
+        if (text == null) {
+            throw new IllegalArgumentException("parameter 'text' cannot be null");
+        }
+        if (from < 0 || to > text.length() || from > to)
+            throw new StringIndexOutOfBoundsException("from " + from + ", to " + to + ", length " + text.length());
+        size = 0;
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            int start = i;
+            if (c == '-' && isDigit(text, i + 1, to) && (i == from
+                    || !CharClass.LETTERS_OR_DIGITS.contains(text.charAt(i - 1)))) {
+                i++;
+            } else if (!CharClass.DIGITS.contains(c)) {
+                i++;
+                continue;
+            }
+            // whole numbers are accumulated while scanning, the others parsed afterwards
+            int digitsFrom = i;
+            long value = 0;
+            for (int digit; i < to && (digit = Numbers.digit(text.charAt(i))) >= 0; i++)
+                value = value * 10 + digit;
+            boolean whole = true;
+            if (i + 1 < to && text.charAt(i) == '.' && isDigit(text, i + 1, to)) {
+                i = digits(text, i + 1, to);
+                whole = false;
+            }
+            if (i + 1 < to && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+                int exponent = i + 1;
+                if (text.charAt(exponent) == '-' || text.charAt(exponent) == '+')
+                    exponent++;
+                if (isDigit(text, exponent, to)) {
+                    i = digits(text, exponent, to);
+                    whole = false;
+                }
+            }
+            if (whole && i - digitsFrom <= 18)
+                add(start, i, digitsFrom == start ? value : -value);
+            else
+                add(text, start, i, whole);
+        }
+        return this;
+    }
+
+    private static boolean isDigit(CharSequence text, int index, int to) {
+        return index < to && CharClass.DIGITS.contains(text.charAt(index));
+    }
+
+    /**
+     * The end of the run of digits that starts at {@code from}.
+     */
+    private static int digits(CharSequence text, int from, int to) {
+        while (from < to && CharClass.DIGITS.contains(text.charAt(from)))
+            from++;
+        return from;
+    }
+
+    private void add(int start, int end, long value) {
+        grow();
+        starts[size] = start;
+        ends[size] = end;
+        doubles[size] = value;
+        longs[size] = value;
+        integral[size++] = true;
+    }
+
+    /**
+     * Adds a number that may not fit into a long.
+     */
+    private void add(CharSequence text, int start, int end, boolean whole) {
+        grow();
+        starts[size] = start;
+        ends[size] = end;
+        doubles[size] = Numbers.parseDouble(text, start, end);
+        integral[size] = whole && fitsLong(text, start, end);
+        longs[size] = integral[size] ? Numbers.parseLong(text, start, end) : (long) doubles[size];
+        size++;
+    }
+
+    private void grow() {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            doubles = Arrays.copyOf(doubles, capacity);
+            longs = Arrays.copyOf(longs, capacity);
+            integral = Arrays.copyOf(integral, capacity);
+        }
+    }
+
+    private static boolean fitsLong(CharSequence text, int start, int end) {
+        try {
+            Numbers.parseLong(text, start, end);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int start(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    /**
+     * Whether the number has neither a fraction nor an exponent and fits into a long.
+     */
+    public boolean isIntegral(int index) {
+        checkIndex(index);
+        return integral[index];
+    }
+
+    /**
+     * The exact value of an {@link #isIntegral(int) integral} number, the double value cast to long otherwise.
+     */
+    public long longValue(int index) {
+        checkIndex(index);
+        return longs[index];
+    }
+
+    public double doubleValue(int index) {
+        checkIndex(index);
+        return doubles[index];
+    }
+
+    /**
+     * The values of the integral numbers, in order.
+     */
+    public long[] longs() {
+        int count = 0;
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++)
+            if (integral[i])
+                values[count++] = longs[i];
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * The values of all numbers, in order.
+     */
+    public double[] doubles() {
+        return Arrays.copyOf(doubles, size);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+}
@@ -0,0 +1,203 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.CharClass;
+
+/**
+ * Parses numbers straight from a range of a {@link CharSequence}, a {@link Text} included, without copying it into a
+ * string first. Digits are the chars of {@link CharClass#DIGITS}, so other scripts' digits count like they do for
+ * {@link Long#parseLong(String)}.
+ * <p>
+ * Nothing is allocated unless the input is malformed, or for a double that needs more than the exact fast path
+ * (see {@link #parseDouble(CharSequence, int, int)}).
+ */
+public final class Numbers {
+
+    /**
+     * Powers of ten that are exact as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT = 1L << 53;
+
+    private Numbers() {
+    }
+
+    public static long parseLong(CharSequence text) throws IllegalArgumentException {
+        return parseLong(checked(text), 0, text.length());
+    }
+
+    /**
+     * Parses {@code text[from, to)} like {@link Long#parseLong(String)}: an optional sign and at least one digit.
+     *
+     * @throws NumberFormatException If the range is not a number or does not fit into a long.
+     */
+    public static long parseLong(CharSequence text, int from, int to) throws IllegalArgumentException {
+        checkRange(checked(text), from, to);
+        int i = from;
+        boolean negative = false;
+        if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            negative = text.charAt(i++) == '-';
+        if (i == to)
+            throw notANumber(text, from, to);
+        // accumulated negatively, so that Long.MIN_VALUE fits
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = digit(text.charAt(i));
+            if (digit < 0 || result < limit / 10)
+                throw notANumber(text, from, to);
+            result *= 10;
+            if (result < limit + digit)
+                throw notANumber(text, from, to);
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    public static int parseInt(CharSequence text) throws IllegalArgumentException {
+        return parseInt(checked(text), 0, text.length());
+    }
+
+    /**
+     * @throws NumberFormatException If the range is not a number or does not fit into an int.
+     */
+    public static int parseInt(CharSequence text, int from, int to) throws IllegalArgumentException {
+        long value = parseLong(text, from, to);
+        if ((int) value != value)
+            throw notANumber(text, from, to);
+        return (int) value;
+    }
+
+    public static double parseDouble(CharSequence text) throws IllegalArgumentException {
+        return parseDouble(checked(text), 0, text.length());
+    }
+
+    /**
+     * Parses a decimal number in {@code text[from, to)}: an optional sign, digits with an optional point and an
+     * optional exponent, e.g. {@code -12}, {@code 0.5}, {@code .5}, {@code 3.} or {@code 1.5e-3}. Unlike
+     * {@link Double#parseDouble(String)} it takes no surrounding whitespace, no type suffix and no hexadecimal,
+     * {@code NaN} or {@code Infinity}.
+     * <p>
+     * Up to 15 significant digits and a decimal exponent of at most 22 are computed exactly with a single
+     * multiplication or division, like the fast path of the JDK. Anything else is handed to
+     * {@link Double#parseDouble(String)}, so that the result is always correctly rounded.
+     *
+     * @throws NumberFormatException If the range is not such a number.
+     */
+    public static double parseDouble(CharSequence text, int from, int to) throws IllegalArgumentException {
+        checkRange(checked(text), from, to);
+        int i = from;
+        boolean negative = false;
+        if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            negative = text.charAt(i++) == '-';
+
+        long mantissa = 0;
+        int significant = 0, exponent = 0, digits = 0;
+        boolean truncated = false, point = false;
+        for (; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+                continue;
+            }
+            int digit = digit(c);
+            if (digit < 0)
+                break;
+            digits++;
+            if (significant < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0)
+                    significant++;
+                if (point)
+                    exponent--;
+            } else {
+                truncated |= digit != 0;
+                if (!point)
+                    exponent++;
+            }
+        }
+        if (digits == 0)
+            throw notANumber(text, from, to);
+        if (i < to) {
+            char c = text.charAt(i++);
+            if (c != 'e' && c != 'E')
+                throw notANumber(text, from, to);
+            boolean negativeExponent = false;
+            if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+                negativeExponent = text.charAt(i++) == '-';
+            if (i == to)
+                throw notANumber(text, from, to);
+            int explicit = 0;
+            for (; i < to; i++) {
+                int digit = digit(text.charAt(i));
+                if (digit < 0)
+                    throw notANumber(text, from, to);
+                // far beyond any double, but without overflowing the int
+                explicit = Math.min(explicit * 10 + digit, 100_000);
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+
+        if (mantissa == 0)
+            return negative ? -0.0 : 0.0;
+        if (!truncated && mantissa < MAX_EXACT && Math.abs(exponent) < POWERS_OF_TEN.length) {
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(ascii(text, from, to));
+    }
+
+    /**
+     * Like {@link Text#isNumber(String)}: an optional minus, digits and at most one point.
+     */
+    static boolean isNumber(CharSequence text) {
+        int points = 0;
+        for (int i = text.length() > 0 && text.charAt(0) == '-' ? 1 : 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.')
+                points++;
+            else if (!CharClass.DIGITS.contains(c))
+                return false;
+        }
+        return points < 2;
+    }
+
+    /**
+     * The value of a digit, or -1 for any other char.
+     */
+    static int digit(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        return CharClass.DIGITS.contains(c) ? Character.digit(c, 10) : -1;
+    }
+
+    /**
+     * The range with every digit replaced by its ASCII counterpart, for {@link Double#parseDouble(String)}.
+     */
+    private static String ascii(CharSequence text, int from, int to) {
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            int digit = digit(c);
+            chars[i - from] = digit < 0 ? c : (char) ('0' + digit);
+        }
+        return new String(chars);
+    }
+
+    private static CharSequence checked(CharSequence text) {
+        if (text == null) {
+            throw new IllegalArgumentException("parameter 'text' cannot be null");
+        }
+        return text;
+    }
+
+    private static void checkRange(CharSequence text, int from, int to) {
+        if (from < 0 || to > text.length() || from > to)
+            throw new StringIndexOutOfBoundsException("from " + from + ", to " + to + ", length " + text.length());
+    }
+
+    private static NumberFormatException notANumber(CharSequence text, int from, int to) {
+        return new NumberFormatException("For input string: \"" + text.subSequence(from, to) + "\"");
+    }
+}
@@ -0,0 +1,160 @@
+package com.debuggd.text;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * The operations of a {@link Text#parallel() parallel} text. The text is cut into chunks that are processed as
+ * tasks of the common {@link ForkJoinPool}, and the results are stitched so that they equal the sequential ones.
+ * <p>
+ * Searches read across the end of their chunk, so that an occurrence that straddles it is found by the chunk it
+ * starts in. Edits work on a private copy of each chunk and are joined into new storage, see
+ * {@link #transform(TextStorage, UnaryOperator, boolean, int)}.
+ */
+final class ParallelText {
+
+    /**
+     * Shorter texts are processed sequentially, the tasks would cost more than they save. The same goes for a
+     * common pool of one worker.
+     */
+    static final int THRESHOLD = 1 << 20;
+    private static final int MIN_CHUNK = 1 << 16;
+
+    private ParallelText() {
+    }
+
+    /**
+     * Whether a text of {@code length} chars is long enough and there is more than one worker to share it.
+     */
+    static boolean pays(int length) {
+        return length >= THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * A few chunks per worker, so that a slow chunk does not hold up the others for long.
+     */
+    static int chunks(int length) {
+        return (int) Math.max(1, Math.min(4L * ForkJoinPool.getCommonPoolParallelism(), length / MIN_CHUNK));
+    }
+
+    /**
+     * {@link Text#count(String)}: the occurrences that start in each chunk, overlapping ones included.
+     */
+    static int count(TextStorage storage, String str, int chunks) {
+        Searcher searcher = new Searcher(str);
+        int length = storage.length();
+        int[] counts = new int[chunks];
+        forEachChunk(chunks, chunk -> {
+            Text view = new Text(storage.reader());
+            int to = Math.min(length, bound(chunk + 1, chunks, length) + str.length() - 1);
+            int count = 0;
+            for (int i = searcher.indexOf(view, bound(chunk, chunks, length), to); i != -1;
+                 i = searcher.indexOf(view, i + 1, to))
+                count++;
+            counts[chunk] = count;
+        });
+        int count = 0;
+        for (int c : counts)
+            count += c;
+        return count;
+    }
+
+    /**
+     * {@link Text#indexArrayOf(String)}: the chunks collect every start, overlapping ones included, and the
+     * non-overlapping ones are picked from left to right afterwards.
+     */
+    static int[] indicesOf(TextStorage storage, String str, int chunks) {
+        Searcher searcher = new Searcher(str);
+        int length = storage.length();
+        int[][] starts = new int[chunks][];
+        forEachChunk(chunks, chunk -> {
+            Text view = new Text(storage.reader());
+            int to = Math.min(length, bound(chunk + 1, chunks, length) + str.length() - 1);
+            int[] indices = new int[8];
+            int count = 0;
+            for (int i = searcher.indexOf(view, bound(chunk, chunks, length), to); i != -1;
+                 i = searcher.indexOf(view, i + 1, to)) {
+                if (count == indices.length)
+                    indices = Arrays.copyOf(indices, count * 2);
+                indices[count++] = i;
+            }
+            starts[chunk] = Arrays.copyOf(indices, count);
+        });
+        int[] indices = new int[8];
+        int count = 0, next = 0;
+        for (int[] chunkStarts : starts) {
+            for (int start : chunkStarts) {
+                if (start < next)
+                    continue;
+                if (count == indices.length)
+                    indices = Arrays.copyOf(indices, count * 2);
+                indices[count++] = start;
+                next = start + str.length();
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * Applies {@code operation} to a copy of each chunk and joins the results. It must work char by char, like a
+     * mapping or a {@link com.debuggd.text.filter.CharClass}, except for runs of spaces: with
+     * {@code collapseSpaces}, a chunk's leading space is dropped if the result so far ends with one, which is what
+     * {@link Text#normalizeWhiteSpaces()} needs.
+     *
+     * @return the storage that holds the result
+     */
+    static TextStorage transform(TextStorage storage, UnaryOperator<EditableStorage> operation, boolean collapseSpaces,
+                                 int chunks) {
+        int length = storage.length();
+        EditableStorage[] parts = new EditableStorage[chunks];
+        forEachChunk(chunks, chunk -> parts[chunk] = operation.apply(
+                storage.reader().slice(bound(chunk, chunks, length), bound(chunk + 1, chunks, length))));
+
+        int[] skip = new int[chunks];
+        int[] offsets = new int[chunks + 1];
+        boolean afterSpace = false, latin1 = true;
+        for (int i = 0; i < chunks; i++) {
+            int partLength = parts[i].length();
+            if (collapseSpaces && partLength > 0) {
+                skip[i] = afterSpace && parts[i].charAt(0) == ' ' ? 1 : 0;
+                if (partLength > skip[i])
+                    afterSpace = parts[i].charAt(partLength - 1) == ' ';
+            }
+            offsets[i + 1] = offsets[i] + partLength - skip[i];
+            latin1 &= parts[i] instanceof Latin1Storage;
+        }
+
+        if (latin1) {
+            byte[] joined = new byte[offsets[chunks]];
+            forEachChunk(chunks, chunk -> ((Latin1Storage) parts[chunk]).getBytes(skip[chunk],
+                    parts[chunk].length(), joined, offsets[chunk]));
+            return Latin1Storage.wrap(joined);
+        }
+        char[] joined = new char[offsets[chunks]];
+        forEachChunk(chunks, chunk -> parts[chunk].getChars(skip[chunk], parts[chunk].length(), joined,
+                offsets[chunk]));
+        return new BuilderStorage(new StringBuilder(joined.length + 16).append(joined));
+    }
+
+    /**
+     * The start of chunk {@code chunk}, or the length for {@code chunk == chunks}.
+     */
+    private static int bound(int chunk, int chunks, int length) {
+        return (int) ((long) length * chunk / chunks);
+    }
+
+    /**
+     * Runs {@code task} for every chunk and waits for all of them. The first chunk runs in the calling thread.
+     */
+    private static void forEachChunk(int chunks, IntConsumer task) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[chunks];
+        for (int i = 0; i < chunks; i++) {
+            int chunk = i;
+            tasks[i] = ForkJoinTask.adapt(() -> task.accept(chunk));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+}
@@ -0,0 +1,509 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.TextFilter;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+
+/**
+ * Rope storage for large texts that are edited at arbitrary positions: an immutable AVL tree whose leaves hold
+ * strings of at most {@link #LEAF_LENGTH} chars. Inserts, deletes and replacements split and join the tree in
+ * O(log n), copies share the whole tree. Single chars appended at the end are collected into the next leaf first,
+ * so that building a rope a char at a time does not copy the last leaf for every char.
+ */
+final class RopeStorage extends EditableStorage {
+
+    static final int LEAF_LENGTH = 1024;
+
+    private Node root;
+    // chars of append(char) behind the tree, collected until they fill a leaf or another operation needs the tree
+    private StringBuilder appended;
+
+    // leaf of the last lookup and its offset, so that sequential charAt calls do not walk down the tree
+    private Node cursorLeaf;
+    private int cursorStart;
+
+    RopeStorage(TextStorage source) {
+        ArrayList<Node> leaves = new ArrayList<>();
+        for (int start = 0, length = source.length(); start < length; start += LEAF_LENGTH)
+            leaves.add(new Node(source.substring(start, Math.min(start + LEAF_LENGTH, length))));
+        setRoot(balanced(leaves, 0, leaves.size()));
+    }
+
+    private RopeStorage(Node root) {
+        setRoot(root);
+    }
+
+    private void setRoot(Node root) {
+        this.root = root;
+        cursorLeaf = null;
+        if (appended != null)
+            appended.setLength(0);
+    }
+
+    /**
+     * Joins the chars collected by {@link #append(char)} to the tree.
+     */
+    private void flush() {
+        if (appended != null && appended.length() > 0)
+            setRoot(tree());
+    }
+
+    /**
+     * The whole text as a tree, without changing this storage.
+     */
+    private Node tree() {
+        return appended == null || appended.length() == 0 ? root : join(root, new Node(appended.toString()));
+    }
+
+    private int treeLength() {
+        return root == null ? 0 : root.length;
+    }
+
+    @Override
+    int length() {
+        return treeLength() + (appended == null ? 0 : appended.length());
+    }
+
+    @Override
+    char charAt(int index) {
+        if (appended != null && index >= treeLength())
+            return appended.charAt(index - treeLength());
+        return leafAt(index).chars.charAt(index - cursorStart);
+    }
+
+    /**
+     * Moves the cursor to the leaf that contains {@code index} and returns it.
+     */
+    private Node leafAt(int index) {
+        Node leaf = cursorLeaf;
+        if (leaf == null || index < cursorStart || index >= cursorStart + leaf.length) {
+            int start = 0;
+            leaf = root;
+            while (!leaf.isLeaf()) {
+                if (index < start + leaf.left.length) {
+                    leaf = leaf.left;
+                } else {
+                    start += leaf.left.length;
+                    leaf = leaf.right;
+                }
+            }
+            cursorLeaf = leaf;
+            cursorStart = start;
+        }
+        return leaf;
+    }
+
+    /**
+     * Searches every leaf with {@link String#indexOf(String, int)} and checks the few positions where an occurrence
+     * could cross into the next leaf by hand.
+     */
+    @Override
+    int indexOf(String str, int from) {
+        flush();
+        int length = length();
+        from = Math.max(from, 0);
+        if (str.isEmpty())
+            return Math.min(from, length);
+        while (from < length) {
+            Node leaf = leafAt(from);
+            int leafStart = cursorStart, leafEnd = leafStart + leaf.length;
+            int i = leaf.chars.indexOf(str, from - leafStart);
+            if (i != -1)
+                return leafStart + i;
+            for (int p = Math.max(from, leafEnd - str.length() + 1); p < leafEnd && p + str.length() <= length; p++)
+                if (regionMatches(p, str))
+                    return p;
+            from = leafEnd;
+        }
+        return -1;
+    }
+
+    @Override
+    int lastIndexOf(String str) {
+        flush();
+        if (str.isEmpty())
+            return length();
+        int from = length() - str.length();
+        while (from >= 0) {
+            Node leaf = leafAt(from);
+            int leafStart = cursorStart, leafEnd = leafStart + leaf.length;
+            for (int p = from; p >= leafStart && p > leafEnd - str.length(); p--)
+                if (regionMatches(p, str))
+                    return p;
+            int inLeaf = Math.min(from, leafEnd - str.length()) - leafStart;
+            if (inLeaf >= 0) {
+                int i = leaf.chars.lastIndexOf(str, inLeaf);
+                if (i != -1)
+                    return leafStart + i;
+            }
+            from = leafStart - 1;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int offset, String str) {
+        for (int i = 0; i < str.length(); i++)
+            if (charAt(offset + i) != str.charAt(i))
+                return false;
+        return true;
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dst, int dstBegin) {
+        flush();
+        getChars(root, 0, start, end, dst, dstBegin);
+    }
+
+    private static void getChars(Node node, int nodeStart, int start, int end, char[] dst, int dstBegin) {
+        if (node == null || start >= nodeStart + node.length || end <= nodeStart)
+            return;
+        if (node.isLeaf()) {
+            int from = Math.max(start, nodeStart);
+            node.chars.getChars(from - nodeStart, Math.min(end, nodeStart + node.length) - nodeStart,
+                    dst, dstBegin + from - start);
+        } else {
+            getChars(node.left, nodeStart, start, end, dst, dstBegin);
+            getChars(node.right, nodeStart + node.left.length, start, end, dst, dstBegin);
+        }
+    }
+
+    @Override
+    String substring(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    void delete(int start, int end) {
+        flush();
+        Node[] head = split(root, start);
+        Node[] tail = split(head[1], end - start);
+        setRoot(join(head[0], tail[1]));
+    }
+
+    @Override
+    void insert(int offset, String str) {
+        flush();
+        Node[] parts = split(root, offset);
+        setRoot(join(join(parts[0], of(str)), parts[1]));
+    }
+
+    @Override
+    void replace(int start, int end, String str) {
+        flush();
+        Node[] head = split(root, start);
+        Node[] tail = split(head[1], end - start);
+        setRoot(join(join(head[0], of(str)), tail[1]));
+    }
+
+    @Override
+    void append(char c) {
+        if (appended == null)
+            appended = new StringBuilder(LEAF_LENGTH);
+        appended.append(c);
+        if (appended.length() == LEAF_LENGTH)
+            flush();
+    }
+
+    @Override
+    void append(CharSequence str) {
+        flush();
+        setRoot(join(root, of(str)));
+    }
+
+    @Override
+    void setCharAt(int index, char c) {
+        flush();
+        setRoot(withChar(root, index, c));
+    }
+
+    private static Node withChar(Node node, int index, char c) {
+        if (node.isLeaf()) {
+            char[] chars = node.chars.toCharArray();
+            chars[index] = c;
+            return new Node(new String(chars));
+        }
+        if (index < node.left.length)
+            return new Node(withChar(node.left, index, c), node.right);
+        return new Node(node.left, withChar(node.right, index - node.left.length, c));
+    }
+
+    @Override
+    EditableStorage map(CharMapping mapping) {
+        flush();
+        setRoot(map(root, mapping));
+        return this;
+    }
+
+    /**
+     * Keeps the leaves (and thereby the subtrees) that the mapping does not change.
+     */
+    private static Node map(Node node, CharMapping mapping) {
+        if (node == null)
+            return null;
+        if (node.isLeaf()) {
+            char[] chars = null;
+            for (int i = 0; i < node.length; i++) {
+                char c = node.chars.charAt(i);
+                char mapped = mapping.map(c);
+                if (mapped != c) {
+                    if (chars == null)
+                        chars = node.chars.toCharArray();
+                    chars[i] = mapped;
+                }
+            }
+            return chars == null ? node : new Node(new String(chars));
+        }
+        Node left = map(node.left, mapping);
+        Node right = map(node.right, mapping);
+        return left == node.left && right == node.right ? node : new Node(left, right);
+    }
+
+    @Override
+    void filter(TextFilter filter) {
+        flush();
+        LeafWriter writer = new LeafWriter();
+        for (int i = 0, length = length(); i < length; i++) {
+            char c = charAt(i);
+            if (filter.accept(c))
+                writer.append(c);
+        }
+        setRoot(writer.finish());
+    }
+
+    @Override
+    void replaceAll(String what, String with) {
+        flush();
+        int hit = indexOf(what, 0);
+        if (hit == -1)
+            return;
+        LeafWriter writer = new LeafWriter();
+        int read = 0;
+        while (hit != -1) {
+            writer.append(this, read, hit);
+            writer.append(with, 0, with.length());
+            read = hit + what.length();
+            hit = indexOf(what, read);
+        }
+        writer.append(this, read, length());
+        setRoot(writer.finish());
+    }
+
+    @Override
+    TextStorage setContent(StringBuilder content) {
+        setRoot(of(content));
+        return this;
+    }
+
+    @Override
+    TextStorage setContent(char[] chars, int start, int end) {
+        setRoot(of(CharBuffer.wrap(chars, start, end - start)));
+        return this;
+    }
+
+    @Override
+    TextStorage reset(CharSequence content) {
+        setRoot(of(content));
+        return this;
+    }
+
+    @Override
+    TextStorage share() {
+        return new RopeStorage(tree());
+    }
+
+    /**
+     * A view with its own {@link #cursorLeaf cursor}.
+     */
+    @Override
+    TextStorage reader() {
+        return share();
+    }
+
+    @Override
+    RopeStorage toRope() {
+        return this;
+    }
+
+    private static Node of(CharSequence str) {
+        LeafWriter writer = new LeafWriter();
+        writer.append(str, 0, str.length());
+        return writer.finish();
+    }
+
+    /**
+     * Splits {@code node} into the ropes before and from {@code index}, either of which may be {@code null}.
+     */
+    private static Node[] split(Node node, int index) {
+        if (node == null || index <= 0)
+            return new Node[]{null, node};
+        if (index >= node.length)
+            return new Node[]{node, null};
+        if (node.isLeaf())
+            return new Node[]{new Node(node.chars.substring(0, index)), new Node(node.chars.substring(index))};
+        if (index == node.left.length)
+            return new Node[]{node.left, node.right};
+        if (index < node.left.length) {
+            Node[] parts = split(node.left, index);
+            parts[1] = join(parts[1], node.right);
+            return parts;
+        }
+        Node[] parts = split(node.right, index - node.left.length);
+        parts[0] = join(node.left, parts[0]);
+        return parts;
+    }
+
+    /**
+     * AVL join: descends the spine of the taller rope until the heights match and rebalances on the way up. Short
+     * leaves that meet at the seam are merged, so that repeated small edits do not fragment the rope.
+     */
+    private static Node join(Node left, Node right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        if (right.isLeaf()) {
+            Node last = rightmostLeaf(left);
+            if (last.length + right.length <= LEAF_LENGTH)
+                return withRightmostLeaf(left, new Node(last.chars.concat(right.chars)));
+        }
+        if (left.isLeaf()) {
+            Node first = leftmostLeaf(right);
+            if (left.length + first.length <= LEAF_LENGTH)
+                return withLeftmostLeaf(right, new Node(left.chars.concat(first.chars)));
+        }
+        if (left.height > right.height + 1)
+            return balance(left.left, join(left.right, right));
+        if (right.height > left.height + 1)
+            return balance(join(left, right.left), right.right);
+        return new Node(left, right);
+    }
+
+    private static Node balance(Node left, Node right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) >= height(left.right))
+                return new Node(left.left, new Node(left.right, right));
+            return new Node(new Node(left.left, left.right.left), new Node(left.right.right, right));
+        }
+        if (difference < -1) {
+            if (height(right.right) >= height(right.left))
+                return new Node(new Node(left, right.left), right.right);
+            return new Node(new Node(left, right.left.left), new Node(right.left.right, right.right));
+        }
+        return new Node(left, right);
+    }
+
+    private static int height(Node node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static Node rightmostLeaf(Node node) {
+        while (!node.isLeaf())
+            node = node.right;
+        return node;
+    }
+
+    private static Node leftmostLeaf(Node node) {
+        while (!node.isLeaf())
+            node = node.left;
+        return node;
+    }
+
+    private static Node withRightmostLeaf(Node node, Node leaf) {
+        return node.isLeaf() ? leaf : new Node(node.left, withRightmostLeaf(node.right, leaf));
+    }
+
+    private static Node withLeftmostLeaf(Node node, Node leaf) {
+        return node.isLeaf() ? leaf : new Node(withLeftmostLeaf(node.left, leaf), node.right);
+    }
+
+    private static Node balanced(ArrayList<Node> leaves, int from, int to) {
+        if (from == to)
+            return null;
+        if (to - from == 1)
+            return leaves.get(from);
+        int middle = (from + to) >>> 1;
+        return new Node(balanced(leaves, from, middle), balanced(leaves, middle, to));
+    }
+
+    private static final class Node {
+
+        final String chars;
+        final Node left;
+        final Node right;
+        final int length;
+        final int height;
+
+        Node(String chars) {
+            this.chars = chars;
+            this.left = null;
+            this.right = null;
+            this.length = chars.length();
+            this.height = 0;
+        }
+
+        Node(Node left, Node right) {
+            this.chars = null;
+            this.left = left;
+            this.right = right;
+            this.length = left.length + right.length;
+            this.height = Math.max(left.height, right.height) + 1;
+        }
+
+        boolean isLeaf() {
+            return chars != null;
+        }
+    }
+
+    /**
+     * Collects chars into full leaves and builds a balanced rope from them.
+     */
+    private static final class LeafWriter {
+
+        private final ArrayList<Node> leaves = new ArrayList<>();
+        private final StringBuilder leaf = new StringBuilder(LEAF_LENGTH);
+
+        void append(char c) {
+            leaf.append(c);
+            if (leaf.length() == LEAF_LENGTH)
+                flush();
+        }
+
+        void append(CharSequence str, int start, int end) {
+            while (start < end) {
+                int n = Math.min(end - start, LEAF_LENGTH - leaf.length());
+                leaf.append(str, start, start + n);
+                start += n;
+                if (leaf.length() == LEAF_LENGTH)
+                    flush();
+            }
+        }
+
+        void append(RopeStorage rope, int start, int end) {
+            while (start < end) {
+                int n = Math.min(end - start, LEAF_LENGTH - leaf.length());
+                Node source = rope.leafAt(start);
+                int offset = start - rope.cursorStart;
+                n = Math.min(n, source.length - offset);
+                leaf.append(source.chars, offset, offset + n);
+                start += n;
+                if (leaf.length() == LEAF_LENGTH)
+                    flush();
+            }
+        }
+
+        private void flush() {
+            leaves.add(new Node(leaf.toString()));
+            leaf.setLength(0);
+        }
+
+        Node finish() {
+            if (leaf.length() > 0)
+                flush();
+            return balanced(leaves, 0, leaves.size());
+        }
+    }
+}
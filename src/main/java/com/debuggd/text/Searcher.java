@@ -0,0 +1,263 @@
+package com.debuggd.text;
+
+import java.util.Arrays;
+
+/**
+ * A precompiled search for one string, to be reused for any number of texts. The search algorithm depends on the
+ * needle:
+ * <ul>
+ * <li>up to three chars: looks for the first char, which {@link String#indexOf(int, int)} does with vector
+ * instructions on current JVMs, and compares the rest</li>
+ * <li>at least four distinct chars: Boyer-Moore-Horspool, which skips up to the whole needle length per step</li>
+ * <li>longer needles with fewer distinct chars ({@code "aaab"}, DNA, ...): Two-Way, which never reads a char twice
+ * where Horspool could degrade to comparing the whole needle at every position</li>
+ * </ul>
+ * Short texts are searched with {@link String#indexOf(String, int)} or {@link StringBuilder#indexOf(String, int)},
+ * which are intrinsics and beat the setup cost of the above there. Searchers are immutable and can be shared between
+ * threads.
+ */
+public final class Searcher {
+
+    private static final int FIRST_CHAR = 0;
+    private static final int HORSPOOL = 1;
+    private static final int TWO_WAY = 2;
+
+    // up to this many chars from the start of the search to the end of the text are left to the JDK
+    private static final int SHORT_TEXT = 1024;
+
+    private final String needle;
+    private final char[] chars;
+    private final int algorithm;
+
+    // Horspool: how far to shift for the last char of the window, by its low byte
+    private final int[] shifts;
+
+    // Two-Way: critical position, period, and whether the needle is periodic (match memory is kept)
+    private final int critical;
+    private final int period;
+    private final boolean periodic;
+
+    /**
+     * @throws IllegalArgumentException If {@code needle} is {@code null} or empty.
+     */
+    public Searcher(String needle) throws IllegalArgumentException {
+        if (Text.anyBlank(needle)) {
+            throw new IllegalArgumentException("parameter 'needle' cannot be null or empty");
+        }
+        this.needle = needle;
+        chars = needle.toCharArray();
+        algorithm = chars.length <= 3 ? FIRST_CHAR : distinctChars() >= 4 ? HORSPOOL : TWO_WAY;
+        shifts = algorithm == HORSPOOL ? horspoolShifts() : null;
+
+        int[] factorization = algorithm == TWO_WAY ? criticalFactorization() : new int[3];
+        critical = factorization[0];
+        period = factorization[1];
+        periodic = factorization[2] != 0;
+    }
+
+    public String needle() {
+        return needle;
+    }
+
+    public int indexOf(CharSequence text) {
+        return indexOf(text, 0);
+    }
+
+    public int indexOf(CharSequence text, int from) {
+        return text == null ? -1 : indexOf(text, from, text.length());
+    }
+
+    /**
+     * Index of the first occurrence that starts at or after {@code from} and ends at or before {@code to}, or -1.
+     */
+    public int indexOf(CharSequence text, int from, int to) {
+        if (text == null)
+            return -1;
+        from = Math.max(from, 0);
+        to = Math.min(to, text.length());
+        return text instanceof Text ? ((Text) text).indexOf(this, from, to) : find(text, from, to);
+    }
+
+    /**
+     * {@link #indexOf(CharSequence, int, int)} with valid bounds, reading {@code text} through {@code charAt}.
+     */
+    int find(CharSequence text, int from, int to) {
+        if (to - from < chars.length)
+            return -1;
+        if (text.length() - from <= SHORT_TEXT && (text instanceof String || text instanceof StringBuilder)) {
+            int i = text instanceof String ? ((String) text).indexOf(needle, from)
+                    : ((StringBuilder) text).indexOf(needle, from);
+            return i + chars.length <= to ? i : -1;
+        }
+        switch (algorithm) {
+            case FIRST_CHAR:
+                return firstChar(text, from, to - chars.length);
+            case HORSPOOL:
+                return horspool(text, from, to - chars.length);
+            default:
+                return twoWay(text, from, to);
+        }
+    }
+
+    public boolean contains(CharSequence text) {
+        return indexOf(text, 0) != -1;
+    }
+
+    /**
+     * Number of occurrences, overlapping ones included (like {@link Text#count(String)}).
+     */
+    public int count(CharSequence text) {
+        int count = 0;
+        for (int i = indexOf(text, 0); i != -1; i = indexOf(text, i + 1))
+            count++;
+        return count;
+    }
+
+    /**
+     * Start indices of the occurrences from left to right, each one after the end of the previous one (like
+     * {@link Text#indicesOf(String)}).
+     */
+    public int[] indicesOf(CharSequence text) {
+        int[] indices = new int[8];
+        int count = 0;
+        for (int i = indexOf(text, 0); i != -1; i = indexOf(text, i + chars.length)) {
+            if (count == indices.length)
+                indices = Arrays.copyOf(indices, count * 2);
+            indices[count++] = i;
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    private int distinctChars() {
+        int distinct = 0;
+        for (int i = 0; i < chars.length; i++)
+            if (needle.indexOf(chars[i]) == i)
+                distinct++;
+        return distinct;
+    }
+
+    /**
+     * Does the needle occur at {@code start}, given that {@code chars[skip]} has already been compared?
+     */
+    private boolean matchesAt(CharSequence text, int start, int skip) {
+        for (int i = 0; i < chars.length; i++)
+            if (i != skip && text.charAt(start + i) != chars[i])
+                return false;
+        return true;
+    }
+
+    private int firstChar(CharSequence text, int from, int last) {
+        char first = chars[0];
+        if (text instanceof String) {
+            String str = (String) text;
+            for (int i = str.indexOf(first, from); i != -1 && i <= last; i = str.indexOf(first, i + 1))
+                if (matchesAt(text, i, 0))
+                    return i;
+            return -1;
+        }
+        for (int i = from; i <= last; i++)
+            if (text.charAt(i) == first && matchesAt(text, i, 0))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Chars that share their low byte share a shift, the smallest one, so that no occurrence is skipped.
+     */
+    private int[] horspoolShifts() {
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, chars.length);
+        for (int i = 0; i < chars.length - 1; i++)
+            shifts[chars[i] & 0xFF] = chars.length - 1 - i;
+        return shifts;
+    }
+
+    private int horspool(CharSequence text, int from, int last) {
+        int end = chars.length - 1;
+        char lastChar = chars[end];
+        for (int i = from; i <= last; ) {
+            char c = text.charAt(i + end);
+            if (c == lastChar && matchesAt(text, i, end))
+                return i;
+            i += shifts[c & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Splits the needle at its critical factorization, from the larger of the maximal suffixes for both char
+     * orders (Crochemore and Perrin, "Two-way string-matching", 1991).
+     *
+     * @return the critical position, the period and 1 if the needle is periodic, 0 otherwise
+     */
+    private int[] criticalFactorization() {
+        int[] periodOfSuffix = new int[1];
+        int suffix = maximalSuffix(false, periodOfSuffix);
+        int suffixPeriod = periodOfSuffix[0];
+        int reversedSuffix = maximalSuffix(true, periodOfSuffix);
+        int critical = suffix > reversedSuffix ? suffix : reversedSuffix;
+        int period = suffix > reversedSuffix ? suffixPeriod : periodOfSuffix[0];
+        if (critical + 1 + period <= chars.length && needle.regionMatches(0, needle, period, critical + 1))
+            return new int[]{critical, period, 1};
+        return new int[]{critical, Math.max(critical + 1, chars.length - critical - 1) + 1, 0};
+    }
+
+    /**
+     * Start of the maximal suffix of the needle minus one, with its period in {@code period[0]}.
+     */
+    private int maximalSuffix(boolean reversed, int[] period) {
+        int suffix = -1;
+        int j = 0;
+        int k = 1;
+        int p = 1;
+        while (j + k < chars.length) {
+            char a = chars[j + k];
+            char b = chars[suffix + k];
+            if (reversed ? a > b : a < b) {
+                j += k;
+                k = 1;
+                p = j - suffix;
+            } else if (a == b) {
+                if (k != p) {
+                    k++;
+                } else {
+                    j += p;
+                    k = 1;
+                }
+            } else {
+                suffix = j;
+                j = suffix + 1;
+                k = p = 1;
+            }
+        }
+        period[0] = p;
+        return suffix;
+    }
+
+    /**
+     * Compares the right part of the needle from left to right, then the left part from right to left. In the
+     * periodic case {@code memory} is the prefix of the window that is known to match after a shift by the period.
+     */
+    private int twoWay(CharSequence text, int from, int to) {
+        int m = chars.length;
+        int memory = -1;
+        for (int j = from; j <= to - m; ) {
+            int i = Math.max(critical, memory) + 1;
+            while (i < m && chars[i] == text.charAt(i + j))
+                i++;
+            if (i < m) {
+                j += i - critical;
+                memory = -1;
+                continue;
+            }
+            i = critical;
+            while (i > memory && chars[i] == text.charAt(i + j))
+                i--;
+            if (i <= memory)
+                return j;
+            j += period;
+            memory = periodic ? m - period - 1 : -1;
+        }
+        return -1;
+    }
+}
@@ -1,69 +1,218 @@
 package com.debuggd.text;
 
+import com.debuggd.text.filter.CharClass;
 import com.debuggd.text.filter.TextFilter;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.UnaryOperator;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 public final class Text implements CharSequence {
 
-    private StringBuilder sb;
+    static final CharClass SINGLE_LINE = CharClass.LINE_BREAKS.negate();
+    static final CharClass DELETE_DIGITS = CharClass.DIGITS.negate();
+    static final CharClass DELETE_LETTERS = CharClass.LETTERS.negate();
+    private static final CharClass NON_ALPHANUMERIC = CharClass.LETTERS_OR_DIGITS.negate();
+    private static final CharClass NON_ALPHANUMERIC_OR_WHITESPACE = NON_ALPHANUMERIC.or(CharClass.WHITESPACE);
+
+    /**
+     * Longer buffers are left to the garbage collector after use instead of being kept by the thread.
+     */
+    private static final int MAX_KEPT_BUFFER = 1 << 16;
+    private static final ThreadLocal<StringBuilder> REPLACED = new ThreadLocal<>();
+
+    private TextStorage storage;
+    private boolean parallel;
 
     public Text() {
         this("");
     }
 
+    /**
+     * A text of Latin-1 chars only is stored with one byte per char until a wider char is added.
+     */
     public Text(String str) {
-        this(new StringBuilder(str));
+        this(Latin1Storage.of(str));
     }
 
+    /**
+     * The text is edited in {@code stringBuilder}, copies of it get a builder of their own.
+     */
     public Text(StringBuilder stringBuilder) {
-        sb = stringBuilder;
+        storage = BuilderStorage.ofCaller(stringBuilder);
+    }
+
+    Text(TextStorage storage) {
+        this.storage = storage;
     }
 
+    /**
+     * A read-only view of {@code file}, which is mapped into memory and decoded a block at a time while it is read.
+     * Only ISO-8859-1 and UTF-8 are supported. The first edit copies the text to the heap. Since reading decodes into
+     * the block of the text, threads that read it at the same time each need their own {@link #reader()}.
+     *
+     * @throws IllegalArgumentException for other charsets or files of more than {@link Integer#MAX_VALUE} chars
+     */
+    public static Text map(Path file, Charset charset) throws IOException {
+        return new Text(MappedStorage.map(file, charset));
+    }
+
+    /**
+     * The copy shares the storage of {@code fromText} until one of them is edited.
+     */
     public Text(Text fromText) {
-        sb = new StringBuilder(fromText.sb);
+        storage = fromText.storage.share();
+    }
+
+    /**
+     * A text of the same chars that another thread can read while this one is read, as long as neither is edited.
+     * Reading a rope or a mapped file moves a cursor, so two threads must not read the same one of those.
+     */
+    public Text reader() {
+        return new Text(storage.reader());
+    }
+
+    /**
+     * Switches to a rope, which makes inserts, deletes and replacements at arbitrary positions O(log n) instead of
+     * O(n). Texts of a million chars or more switch on their own when they are edited in the middle.
+     */
+    public Text withRopeStorage() {
+        storage = storage.toRope();
+        return this;
+    }
+
+    /**
+     * Lets texts of a million chars or more run {@code count}, {@code indicesOf} and {@code indexArrayOf},
+     * {@code toLowerCase}, {@code toUpperCase}, {@code normalizeWhiteSpaces} and filtering with a {@link CharClass}
+     * (e.g. {@code toSingleLine}) in chunks on the common {@link java.util.concurrent.ForkJoinPool}, if it has more
+     * than one worker. The results are the same as sequentially. Other filters may keep state from one char to the
+     * next and always run sequentially.
+     * <p>
+     * Copies of a text start out sequential.
+     */
+    public Text parallel() {
+        parallel = true;
+        return this;
+    }
+
+    public Text sequential() {
+        parallel = false;
+        return this;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    private boolean runsInParallel() {
+        return parallel && ParallelText.pays(length());
     }
 
     @Override
     public String toString() {
-        return String.valueOf(sb);
+        return storage.substring(0, length());
+    }
+
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcBegin < 0 || srcEnd > length() || srcBegin > srcEnd)
+            throw new StringIndexOutOfBoundsException("begin " + srcBegin + ", end " + srcEnd + ", length " + length());
+        storage.getChars(srcBegin, srcEnd, dst, dstBegin);
     }
 
     public char[] toCharArray() {
         char[] chars = new char[length()];
-        for (int i = 0; i < length(); i++)
-            chars[i] = sb.charAt(i);
+        storage.getChars(0, chars.length, chars, 0);
         return chars;
     }
 
     public ArrayList<Integer> indicesOf(String str) {
         ArrayList<Integer> indices = new ArrayList<>();
-        if (!anyBlank(str)) {
-            int i = 0;
-            while ((i = sb.indexOf(str, i)) != -1) {
+        if (runsInParallel() && !anyBlank(str)) {
+            for (int i : indexArrayOf(str))
                 indices.add(i);
-                i = i + str.length();
-            }
+        } else {
+            forEachIndexOf(str, indices::add);
         }
         return indices;
     }
 
+    /**
+     * The indices of {@link #indicesOf(String)} without boxing them.
+     */
+    public int[] indexArrayOf(String str) {
+        if (runsInParallel() && !anyBlank(str))
+            return ParallelText.indicesOf(storage, str, ParallelText.chunks(length()));
+        int[] indices = new int[8];
+        int count = 0;
+        if (!anyBlank(str)) {
+            for (int i = storage.indexOf(str, 0); i != -1; i = storage.indexOf(str, i + str.length())) {
+                if (count == indices.length)
+                    indices = Arrays.copyOf(indices, count * 2);
+                indices[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * Passes the indices of {@link #indicesOf(String)} to {@code action} as they are found, without collecting them.
+     */
+    public void forEachIndexOf(String str, IntConsumer action) {
+        if (!anyBlank(str))
+            for (int i = storage.indexOf(str, 0); i != -1; i = storage.indexOf(str, i + str.length()))
+                action.accept(i);
+    }
+
+    /**
+     * The indices of {@link #indicesOf(String)} as a lazy stream, each one is searched for when the stream asks for
+     * it. The text must not be edited while the stream is in use.
+     */
+    public IntStream indexStreamOf(String str) {
+        return StreamSupport.intStream(new Spliterators.AbstractIntSpliterator(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+            private int next = anyBlank(str) ? -1 : storage.indexOf(str, 0);
+
+            @Override
+            public boolean tryAdvance(IntConsumer action) {
+                if (next == -1)
+                    return false;
+                int index = next;
+                next = storage.indexOf(str, index + str.length());
+                action.accept(index);
+                return true;
+            }
+        }, false);
+    }
+
     public Text trim() {
         return trimLeft().trimRight();
     }
 
     public Text trimLeft() {
-        while (notEmpty() && isSpace(firstChar()))
-            deleteFirstChar();
-        return this;
+        int end = 0;
+        while (end < length() && isSpace(storage.charAt(end)))
+            end++;
+        return delete(0, end);
     }
 
     public Text trimRight() {
-        while (notEmpty() && isSpace(lastChar()))
-            deleteLastChar();
-        return this;
+        int start = length();
+        while (start > 0 && isSpace(storage.charAt(start - 1)))
+            start--;
+        return delete(start, length());
     }
 
     public Text deleteBefore(String strToDelete) {
@@ -76,7 +225,7 @@ public final class Text implements CharSequence {
 
     private Text cutBeforeImpl(String cutStr, boolean inclCutString) {
         if (!anyBlank(cutStr)) {
-            int i = sb.indexOf(cutStr);
+            int i = indexOf(cutStr);
             if (i > -1)
                 delete(0, inclCutString ? i + cutStr.length() : i);
         }
@@ -93,7 +242,7 @@ public final class Text implements CharSequence {
 
     private Text deleteAfterImpl(String cutStr, boolean inclCutString) {
         if (!anyBlank(cutStr)) {
-            int i = sb.indexOf(cutStr);
+            int i = indexOf(cutStr);
             if (i > -1)
                 delete(inclCutString ? i : i + cutStr.length(), length());
         }
@@ -108,6 +257,14 @@ public final class Text implements CharSequence {
         return charAt(length() - 1);
     }
 
+    /**
+     * Frees the memory that edits left unused, for texts that are kept after they have been built.
+     */
+    public Text trimToSize() {
+        storage.trimToSize();
+        return this;
+    }
+
     public boolean isEmpty() {
         return length() == 0;
     }
@@ -118,49 +275,62 @@ public final class Text implements CharSequence {
 
     public Text deleteFirstChar() {
         if (notEmpty())
-            sb.deleteCharAt(0);
+            writable().delete(0, 1);
         return this;
     }
 
     public Text deleteLastChar() {
         if (notEmpty())
-            sb.deleteCharAt(length() - 1);
+            writable().delete(length() - 1, length());
         return this;
     }
 
     public int length() {
-        return sb.length();
+        return storage.length();
     }
 
     @Override
     public char charAt(int index) {
-        return sb.charAt(index);
+        if (index < 0 || index >= length())
+            throw new StringIndexOutOfBoundsException("index " + index + ", length " + length());
+        return storage.charAt(index);
     }
 
     public Text insert(String inStr, int offset) {
-        sb.insert(offset, inStr);
+        if (offset < 0 || offset > length())
+            throw new StringIndexOutOfBoundsException("offset " + offset + ", length " + length());
+        inStr = String.valueOf(inStr);
+        forScatteredEdits(inStr).insert(offset, inStr);
         return this;
     }
 
     @Override
     public CharSequence subSequence(int start, int end) {
-        return sb.subSequence(start, end);
+        if (start < 0 || end > length() || start > end)
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        return storage.substring(start, end);
     }
 
     public int count(String str) {
         if (anyBlank(str))
             return -1;
+        if (runsInParallel())
+            return ParallelText.count(storage, str, ParallelText.chunks(length()));
         int count = 0, i = 0;
-        while ((i = sb.indexOf(str, i)) != -1) {
+        while ((i = storage.indexOf(str, i)) != -1) {
             count++;
             i++;
         }
         return count;
     }
 
+    public int count(char c) {
+        return storage.count(c);
+    }
+
     public Text deleteFirst(String rmStr) {
         if (!anyBlank(rmStr)) {
-            int i = sb.indexOf(rmStr);
+            int i = indexOf(rmStr);
             if (i != -1)
                 delete(i, i + rmStr.length());
         }
@@ -169,7 +339,7 @@ public final class Text implements CharSequence {
 
     public Text deleteLast(String rmStr) {
         if (!anyBlank(rmStr)) {
-            int i = sb.lastIndexOf(rmStr);
+            int i = lastIndexOf(rmStr);
             if (i != -1)
                 delete(i, i + rmStr.length());
         }
@@ -210,38 +380,45 @@ public final class Text implements CharSequence {
     }
 
     public Text deleteAll(String rmStr) {
-        if (!anyBlank(rmStr)) {
-            ArrayList<Integer> indices = indicesOf(rmStr);
-            deleteAtIndicesBackwards(indices, rmStr.length());
-        }
+        if (!anyBlank(rmStr))
+            writable().replaceAll(rmStr, "");
         return this;
     }
 
     public Text deleteCharAt(int index) {
-        sb.deleteCharAt(index);
-        return this;
-    }
-
-    private void deleteAtIndicesBackwards(ArrayList<Integer> indices, int length) {
-        for (int i = indices.size() - 1; i >= 0; i--)
-            delete(indices.get(i), indices.get(i) + length);
+        if (index < 0 || index >= length())
+            throw new StringIndexOutOfBoundsException("index " + index + ", length " + length());
+        return delete(index, index + 1);
     }
 
     public Text delete(int start, int end) {
         if (start > -1 && end > -1 && start <= end) {
-            sb.delete(start, end);
+            if (start > length())
+                throw new StringIndexOutOfBoundsException("start " + start + ", length " + length());
+            end = Math.min(end, length());
+            EditableStorage writable = start != 0 && end != length() ? forScatteredEdits("") : writable();
+            writable.delete(start, end);
         }
         return this;
     }
 
+    /**
+     * Starts a batch of edits at offsets of the text as it is now, which {@link TextEdit#commit()} applies in one
+     * pass, e.g. {@code text.edit().delete(3, 5).insert("x", 20).commit()}.
+     */
+    public TextEdit edit() {
+        return new TextEdit(this);
+    }
+
     public Text replaceFirst(String replaceWhat, String replaceWith) {
         if (anyBlank(replaceWhat))
             return this;
         if (anyBlank(replaceWith))
             replaceWith = "";
-        int i = sb.indexOf(replaceWhat);
-        if (i != -1)
-            sb.replace(i, i + replaceWhat.length(), replaceWith);
+        int i = indexOf(replaceWhat);
+        if (i != -1) {
+            forScatteredEdits(replaceWith).replace(i, i + replaceWhat.length(), replaceWith);
+        }
         return this;
     }
 
@@ -249,9 +426,10 @@ public final class Text implements CharSequence {
         if (!anyBlank(replaceWhat)) {
             if (anyBlank(replaceWith))
                 replaceWith = "";
-            int i = sb.lastIndexOf(replaceWhat);
-            if (i != -1)
-                sb.replace(i, i + replaceWhat.length(), replaceWith);
+            int i = lastIndexOf(replaceWhat);
+            if (i != -1) {
+                forScatteredEdits(replaceWith).replace(i, i + replaceWhat.length(), replaceWith);
+            }
         }
         return this;
     }
@@ -260,47 +438,128 @@ public final class Text implements CharSequence {
         if (!anyBlank(replaceWhat)) {
             if (anyBlank(replaceWith))
                 replaceWith = "";
-            ArrayList<Integer> indices = indicesOf(replaceWhat);
-            replaceAtIndicesBackwards(replaceWhat, replaceWith, indices);
+            writable(replaceWith).replaceAll(replaceWhat, replaceWith);
         }
         return this;
     }
 
-    private void replaceAtIndicesBackwards(String what, String with, ArrayList<Integer> indices) {
-        for (int i = indices.size() - 1; i > -1; i--)
-            sb.replace(indices.get(i), indices.get(i) + what.length(), with);
-    }
-
+    /**
+     * Replaces every match of {@code replaceWhat} like {@link java.util.regex.Matcher#replaceAll(String)}, so
+     * {@code $1}, {@code ${name}} and {@code \\} work in {@code replaceWith}. The compiled pattern runs directly over
+     * the text, flags included.
+     *
+     * @throws IllegalArgumentException  If {@code replaceWith} ends in a lone backslash, or has a {@code $} that is
+     *                                   not followed by a group number or a named group the pattern has.
+     * @throws IndexOutOfBoundsException If {@code replaceWith} refers to a group number the pattern does not have.
+     */
     public Text replaceUsingPattern(Pattern replaceWhat, String replaceWith) {
         if (replaceWhat != null && !anyBlank(replaceWhat.pattern())) {
-            if (anyBlank(replaceWith))
-                replaceWith = "";
-            sb = new StringBuilder(toString().replaceAll(replaceWhat.pattern(), replaceWith));
+            String replacement = anyBlank(replaceWith) ? "" : replaceWith;
+            if (replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1)
+                rewriteMatches(replaceWhat, (match, out) -> out.append(replacement));
+            else
+                rewriteMatches(replaceWhat, (match, out) -> appendReplacement(out, match, replacement));
         }
         return this;
     }
 
-    public Text toSingleLine() {
-        ArrayList<Integer> indicesToDelete = new ArrayList<>();
-        for (int i = 0; i < length(); i++) {
-            char c = charAt(i);
-            if (c == '\n' /* Line Feed (aka '\u000a') */ || c == '\r' /* Carriage Return (aka '\u000D') */
-                    || c == '\u000b' /* Vertical Tab */ || c == '\u000c' /* Form Feed */
-                    || c == '\u0085' /* Next Line */ || c == '\u2028' /* Line Separator */
-                    || c == '\u2029' /* Paragraph Separator */) {
-                indicesToDelete.add(i);
-            }
+    /**
+     * Replaces every match of {@code replaceWhat} with what {@code replacer} returns for it, taken literally, or
+     * removes it if that is {@code null}. The {@link MatchResult} is only valid during the call.
+     */
+    public Text replaceEachMatch(Pattern replaceWhat, Function<MatchResult, CharSequence> replacer) {
+        if (replaceWhat != null && replacer != null && !anyBlank(replaceWhat.pattern())) {
+            rewriteMatches(replaceWhat, (match, out) -> {
+                CharSequence replacement = replacer.apply(match);
+                if (replacement != null)
+                    out.append(replacement);
+            });
         }
-        deleteAtIndicesBackwards(indicesToDelete, 1);
         return this;
     }
 
+    /**
+     * Builds the replaced text in this thread's buffer and copies it into the storage, whose array is reused if it
+     * is large enough. A text without a match is left alone.
+     */
+    private void rewriteMatches(Pattern pattern, BiConsumer<Matcher, StringBuilder> replacement) {
+        Matcher matcher = pattern.matcher(this);
+        if (!matcher.find())
+            return;
+        // a replacer may replace in another text, that one gets a buffer of its own
+        StringBuilder out = REPLACED.get();
+        if (out == null)
+            out = new StringBuilder();
+        REPLACED.set(null);
+        try {
+            int last = 0;
+            do {
+                out.append(this, last, matcher.start());
+                replacement.accept(matcher, out);
+                last = matcher.end();
+            } while (matcher.find());
+            out.append(this, last, length());
+            storage = storage.reset(out);
+        } finally {
+            out.setLength(0);
+            if (out.capacity() <= MAX_KEPT_BUFFER)
+                REPLACED.set(out);
+        }
+    }
+
+    /**
+     * Appends {@code replacement} with its group references resolved against {@code match}, following the rules of
+     * {@link Matcher#appendReplacement(StringBuffer, String)}.
+     */
+    private void appendReplacement(StringBuilder out, Matcher match, String replacement) {
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '\\') {
+                if (++i == replacement.length())
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                out.append(replacement.charAt(i));
+            } else if (c != '$') {
+                out.append(c);
+            } else if (++i == replacement.length()) {
+                throw new IllegalArgumentException("Illegal group reference: group index is missing");
+            } else if (replacement.charAt(i) == '{') {
+                int end = replacement.indexOf('}', i);
+                if (end == -1 || end == i + 1)
+                    throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                String name = replacement.substring(i + 1, end);
+                if (match.start(name) != -1)
+                    out.append(this, match.start(name), match.end(name));
+                i = end;
+            } else {
+                int group = replacement.charAt(i) - '0';
+                if (group < 0 || group > 9)
+                    throw new IllegalArgumentException("Illegal group reference");
+                // more digits belong to the reference as long as the group exists
+                while (i + 1 < replacement.length()) {
+                    int digit = replacement.charAt(i + 1) - '0';
+                    if (digit < 0 || digit > 9 || group * 10 + digit > match.groupCount())
+                        break;
+                    group = group * 10 + digit;
+                    i++;
+                }
+                if (group > match.groupCount())
+                    throw new IndexOutOfBoundsException("No group " + group);
+                if (match.start(group) != -1)
+                    out.append(this, match.start(group), match.end(group));
+            }
+        }
+    }
+
+    public Text toSingleLine() {
+        return filter(SINGLE_LINE);
+    }
+
     public Text deleteDigits() {
-        return filter(c -> !Character.isDigit(c));
+        return filter(DELETE_DIGITS);
     }
 
     public Text deleteLetters() {
-        return filter(c -> !Character.isLetter(c));
+        return filter(DELETE_LETTERS);
     }
 
     public Text deleteNonAphaNumeric() {
@@ -308,23 +567,28 @@ public final class Text implements CharSequence {
     }
 
     public Text deleteNonAlphaNumeric(boolean leaveWhitespaces) {
-        return filter(c -> !Character.isLetterOrDigit(c)
-                || (leaveWhitespaces && Character.isWhitespace(c)));
+        return filter(deleteNonAlphaNumericFilter(leaveWhitespaces));
+    }
+
+    static CharClass deleteNonAlphaNumericFilter(boolean leaveWhitespaces) {
+        return leaveWhitespaces ? NON_ALPHANUMERIC_OR_WHITESPACE : NON_ALPHANUMERIC;
     }
 
     public Text toLowerCase() {
-        for (int i = 0; i < length(); i++)
-            sb.setCharAt(i, Character.toLowerCase(charAt(i)));
+        storage = runsInParallel() ? transform(EditableStorage::toLowerCase, false) : writable().toLowerCase();
         return this;
     }
 
     public Text toUpperCase() {
-        return toUpperCase(enumerateIndices());
+        storage = runsInParallel() ? transform(EditableStorage::toUpperCase, false) : writable().toUpperCase();
+        return this;
     }
 
     public Text toUpperCase(int... indices) {
-        for (int i : indices)
-            sb.setCharAt(i, Character.toUpperCase(charAt(i)));
+        for (int i : indices) {
+            char c = Character.toUpperCase(charAt(i));
+            writable(c).setCharAt(i, c);
+        }
         return this;
     }
 
@@ -354,65 +618,125 @@ public final class Text implements CharSequence {
     }
 
     private void clear() {
-        sb = new StringBuilder();
+        reset(null);
+    }
+
+    /**
+     * Replaces the content with a copy of {@code content} and keeps the memory of the text for it, so that one text
+     * can take any number of records one after the other. {@code null} clears the text.
+     */
+    public Text reset(CharSequence content) {
+        if (content != this)
+            storage = storage.reset(content == null ? "" : content);
+        return this;
+    }
+
+    /**
+     * Cuts the text to {@code newLength} chars or pads it with {@code '\0'} like {@link StringBuilder#setLength(int)},
+     * the memory of the text is kept.
+     */
+    public Text setLength(int newLength) {
+        if (newLength < 0)
+            throw new StringIndexOutOfBoundsException("length " + newLength);
+        if (newLength <= length())
+            return delete(newLength, length());
+        while (length() < newLength)
+            append('\0');
+        return this;
+    }
+
+    Text replaceContent(StringBuilder content) {
+        storage = storage.setContent(content);
+        return this;
+    }
+
+    Text replaceContent(char[] chars, int start, int end) {
+        storage = storage.setContent(chars, start, end);
+        return this;
+    }
+
+    /**
+     * The storage, after replacing a read-only one with one that can be edited.
+     */
+    private EditableStorage writable() {
+        EditableStorage writable = storage.writable();
+        storage = writable;
+        return writable;
+    }
+
+    /**
+     * The storage, after replacing one that cannot hold {@code added} with one that can.
+     */
+    private EditableStorage writable(CharSequence added) {
+        EditableStorage writable = writable();
+        if (!writable.canHold(added))
+            storage = writable = writable.inflate();
+        return writable;
+    }
+
+    private EditableStorage writable(char added) {
+        EditableStorage writable = writable();
+        if (!writable.canHold(added))
+            storage = writable = writable.inflate();
+        return writable;
+    }
+
+    /**
+     * {@link #writable(CharSequence)}, turned into a rope if it is large, for an edit in the middle of the text.
+     */
+    private EditableStorage forScatteredEdits(CharSequence added) {
+        EditableStorage writable = writable(added).forScatteredEdits();
+        storage = writable;
+        return writable;
     }
 
     public boolean contains(String str) {
-        return !anyBlank(str) && sb.indexOf(str) != -1;
+        return !anyBlank(str) && storage.indexOf(str, 0) != -1;
     }
 
     public Text normalizeWhiteSpaces() {
-        for (int i = 0; i < sb.length(); i++) {
-            if (isSpace(charAt(i)))
-                sb.setCharAt(i, ' ');
-        }
-        sb = new StringBuilder(toString().replaceAll(" +", " "));
+        storage = runsInParallel() ? transform(EditableStorage::normalizeWhiteSpaces, true)
+                : writable().normalizeWhiteSpaces();
         return this;
     }
 
+    /**
+     * An optional minus, digits and at most one point. To get the value, see {@link Numbers}.
+     */
     public static boolean isNumber(String str) {
-        if (!anyBlank(str)) {
-            Text asText = new Text(str);
-            if (asText.firstChar() == '-')
-                asText.deleteFirstChar();
-            int pointCounter = 0;
-            for (char c : asText.toCharArray()) {
-                if (c == '.')
-                    pointCounter++;
-                else if (!isDigit(c))
-                    return false;
-            }
-            return pointCounter < 2;
-        }
-        return false;
+        return !anyBlank(str) && Numbers.isNumber(str);
     }
 
     public static boolean isDigit(char c) {
-        return Character.isDigit(c);
+        return CharClass.DIGITS.contains(c);
     }
 
+    /**
+     * Whitespace, Unicode space separators and a few zero width chars, see {@link CharClass#SPACES}.
+     */
     public static boolean isSpace(char c) {
-        return Character.isWhitespace(c) || Character.isSpaceChar(c)
-                || c == '\u180E' // MONGOLIAN VOWEL SEPARATOR
-                || c == '\u200B' // ZERO WIDTH SPACE
-                || c == '\uFEFF'; // ZERO WIDTH NO-BREAK SPACE
+        return CharClass.SPACES.contains(c);
     }
 
     public Text filter(TextFilter filterFunction) {
         if (filterFunction == null)
             return this;
 
-        ArrayList<Integer> indicesToDelete = new ArrayList<>();
-        for (int i = 0; i < length(); i++)
-            if (!filterFunction.accept(charAt(i)))
-                indicesToDelete.add(i);
-
-        for (int i = indicesToDelete.size() - 1; i >= 0; i--)
-            deleteCharAt(indicesToDelete.get(i));
-
+        if (runsInParallel() && filterFunction instanceof CharClass) {
+            storage = transform(chunk -> {
+                chunk.filter(filterFunction);
+                return chunk;
+            }, false);
+        } else {
+            writable().filter(filterFunction);
+        }
         return this;
     }
 
+    private TextStorage transform(UnaryOperator<EditableStorage> operation, boolean collapseSpaces) {
+        return ParallelText.transform(storage, operation, collapseSpaces, ParallelText.chunks(length()));
+    }
+
     public static boolean anyBlank(String... strings) {
         if (strings == null || strings.length == 0)
             return true;
@@ -423,54 +747,92 @@ public final class Text implements CharSequence {
     }
 
     public boolean equals(String str) {
-        return toString().equals(str);
+        return str != null && str.length() == length() && regionMatches(0, str, false);
     }
 
     public boolean equalsIgnoreCase(String str) {
-        return toString().equalsIgnoreCase(str);
+        return str != null && str.length() == length() && regionMatches(0, str, true);
     }
 
+    /**
+     * Compares char by char like {@link String#regionMatches(boolean, int, String, int, int)}, so a char whose lower
+     * case form is longer than one char (the dotted capital I) only matches itself.
+     */
     public boolean containsIgnoreCase(String str) {
-        if (anyBlank(str))
+        if (str == null || str.isEmpty())
             return false;
-        return toString().toLowerCase().contains(str.toLowerCase());
+        for (int i = 0, last = length() - str.length(); i <= last; i++)
+            if (regionMatches(i, str, true))
+                return true;
+        return false;
+    }
+
+    /**
+     * Does {@code str} occur at {@code offset}? The caller makes sure that it fits into the text.
+     */
+    private boolean regionMatches(int offset, String str, boolean ignoreCase) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = storage.charAt(offset + i);
+            char other = str.charAt(i);
+            if (c != other && (!ignoreCase || !equalIgnoringCase(c, other)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean equalIgnoringCase(char c, char other) {
+        char upper = Character.toUpperCase(c);
+        char otherUpper = Character.toUpperCase(other);
+        return upper == otherUpper || Character.toLowerCase(upper) == Character.toLowerCase(otherUpper);
     }
 
     public void append(char c) {
-        sb.append(c);
+        writable(c).append(c);
     }
 
     public void append(String... strings) {
         for (String str : strings)
             if (!anyBlank(str))
-                sb.append(str);
+                writable(str).append(str);
     }
 
     public static boolean isLetter(char c) {
-        return Character.isLetter(c);
+        return CharClass.LETTERS.contains(c);
     }
 
     public Text prepend(String str) {
         if (!anyBlank(str))
-            sb.insert(0, str);
+            insert(str, 0);
         return this;
     }
 
     public int indexOf(char c) {
-        int[] indices = enumerateIndices();
-        for (int i = 0; i < indices.length; i++) {
-            if (charAt(i) == c)
-                return i;
-        }
-        return -1;
+        return storage.indexOf(c, 0);
     }
 
     public int indexOf(String str) {
-        return sb.indexOf(str);
+        return storage.indexOf(str, 0);
+    }
+
+    /**
+     * Index of the first match of {@code searcher} in {@code [from, to)}, both already clamped to the text.
+     */
+    int indexOf(Searcher searcher, int from, int to) {
+        return storage.indexOf(searcher, from, to, this);
+    }
+
+    /**
+     * Precompiles the search for {@code str}, for when it is looked for in many texts or in a long one. The
+     * {@link Searcher} methods take a {@code Text} like any other {@link CharSequence}.
+     *
+     * @throws IllegalArgumentException If {@code str} is {@code null} or empty.
+     */
+    public static Searcher searcher(String str) throws IllegalArgumentException {
+        return new Searcher(str);
     }
 
     public int lastIndexOf(String str) {
-        return sb.lastIndexOf(str);
+        return storage.lastIndexOf(str);
     }
 
     public static Text textAfter(Text text, String str) {
@@ -479,25 +841,25 @@ public final class Text implements CharSequence {
     }
 
     public Text deleteLeading(char... chars) {
-        HashSet<Character> charsToDelete = new HashSet<>();
-        for (char c : chars) {
-            charsToDelete.add(c);
-        }
-        while (!isEmpty() && charsToDelete.contains(firstChar())) {
-            deleteFirstChar();
-        }
-        return this;
+        int end = 0;
+        while (end < length() && containsChar(chars, charAt(end)))
+            end++;
+        return delete(0, end);
     }
 
     public Text deleteTrailing(char... chars) {
-        HashSet<Character> charsToDelete = new HashSet<>();
-        for (char c : chars) {
-            charsToDelete.add(c);
-        }
-        while (!isEmpty() && charsToDelete.contains(lastChar())) {
-            deleteLastChar();
-        }
-        return this;
+        int start = length();
+        while (start > 0 && containsChar(chars, charAt(start - 1)))
+            start--;
+        return delete(start, length());
+    }
+
+    private static boolean containsChar(char[] chars, char c) {
+        if (chars != null)
+            for (char candidate : chars)
+                if (candidate == c)
+                    return true;
+        return false;
     }
 
     public Text clearIfEquals(String str) {
@@ -511,8 +873,7 @@ public final class Text implements CharSequence {
         if (str == null || str.isEmpty()) {
             return false;
         }
-        // TODO optimiere, sb.toString ist hier unnötig!!!
-        return sb.toString().endsWith(str);
+        return str.length() <= length() && regionMatches(length() - str.length(), str, false);
     }
 
     public Text setIfEquals(String newValueStr, String compareStr)
@@ -522,7 +883,7 @@ public final class Text implements CharSequence {
             throw new IllegalArgumentException("compareStr");
         }
         if (equals(compareStr)) {
-            sb = new StringBuilder(newValueStr);
+            replaceContent(new StringBuilder(newValueStr));
         }
         return this;
     }
@@ -0,0 +1,152 @@
+package com.debuggd.text;
+
+import java.util.Arrays;
+
+/**
+ * Inserts, deletes and replacements at offsets of a {@link Text} that are collected first and applied together by
+ * {@link #commit()}, in one pass over the text. All offsets refer to the text as it was when the edit was started,
+ * so they stay valid however much the edits before them add or remove, and k edits of a text of n chars cost
+ * O(n + k) instead of O(n * k) one at a time.
+ * <p>
+ * The deleted or replaced ranges must not overlap, and an insert must not fall inside one of them. Inserts at the
+ * same offset keep the order they were added in, and come before a range that starts there.
+ * <p>
+ * The text must not be changed otherwise until the commit. Nothing happens to it if the edit is never committed.
+ * After a commit the edit can be used again, with offsets into the new text, and keeps its buffers like
+ * {@link NumberExtractor}. An edit is not thread-safe.
+ */
+public final class TextEdit {
+
+    private static final long SEQUENCE_MASK = 0x7FFF_FFFFL;
+    private static final long RANGE = 1L << 31;
+
+    private final Text text;
+    private int length;
+
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private String[] strs = new String[8];
+    // start, whether the edit removes chars and the number of the edit, sorted by that order
+    private long[] keys = new long[8];
+    private boolean ordered = true;
+    private int size;
+    private char[] chars = new char[0];
+
+    TextEdit(Text text) {
+        this.text = text;
+        length = text.length();
+    }
+
+    /**
+     * @throws IllegalArgumentException        If {@code inStr} is {@code null}.
+     * @throws StringIndexOutOfBoundsException If {@code offset} is not in the text.
+     */
+    public TextEdit insert(String inStr, int offset) throws IllegalArgumentException {
+        if (inStr == null) {
+            throw new IllegalArgumentException("parameter 'inStr' cannot be null");
+        }
+        checkRange(offset, offset);
+        add(offset, offset, inStr);
+        return this;
+    }
+
+    /**
+     * @throws StringIndexOutOfBoundsException If {@code [start, end)} is not in the text.
+     */
+    public TextEdit delete(int start, int end) {
+        checkRange(start, end);
+        add(start, end, "");
+        return this;
+    }
+
+    /**
+     * @throws IllegalArgumentException        If {@code str} is {@code null}.
+     * @throws StringIndexOutOfBoundsException If {@code [start, end)} is not in the text.
+     */
+    public TextEdit replace(int start, int end, String str) throws IllegalArgumentException {
+        if (str == null) {
+            throw new IllegalArgumentException("parameter 'str' cannot be null");
+        }
+        checkRange(start, end);
+        add(start, end, str);
+        return this;
+    }
+
+    /**
+     * The number of edits waiting for {@link #commit()}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Applies the edits and starts over with none.
+     *
+     * @return the edited text
+     * @throws IllegalStateException If two edits overlap, or the text was changed in between. The text and the
+     *                               edits are left as they are.
+     */
+    public Text commit() {
+        if (text.length() != length)
+            throw new IllegalStateException("the text was changed during the edit");
+        if (size == 0)
+            return text;
+        if (!ordered) {
+            Arrays.sort(keys, 0, size);
+            ordered = true;
+        }
+        long newLength = length;
+        int previous = -1;
+        for (int k = 0; k < size; k++) {
+            int e = (int) (keys[k] & SEQUENCE_MASK);
+            if (previous != -1 && starts[e] < ends[previous])
+                throw new IllegalStateException("edits at [" + starts[previous] + ", " + ends[previous] + ") and ["
+                        + starts[e] + ", " + ends[e] + ") overlap");
+            newLength += strs[e].length() - (ends[e] - starts[e]);
+            previous = e;
+        }
+        if (newLength > Integer.MAX_VALUE)
+            throw new IllegalStateException("more than " + Integer.MAX_VALUE + " chars");
+
+        if (chars.length < newLength)
+            chars = new char[(int) newLength];
+        int read = 0, written = 0;
+        for (int k = 0; k < size; k++) {
+            int e = (int) (keys[k] & SEQUENCE_MASK);
+            text.getChars(read, starts[e], chars, written);
+            written += starts[e] - read;
+            strs[e].getChars(0, strs[e].length(), chars, written);
+            written += strs[e].length();
+            read = ends[e];
+        }
+        text.getChars(read, length, chars, written);
+        text.replaceContent(chars, 0, (int) newLength);
+
+        Arrays.fill(strs, 0, size, null);
+        size = 0;
+        length = (int) newLength;
+        return text;
+    }
+
+    private void add(int start, int end, String str) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            strs = Arrays.copyOf(strs, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        strs[size] = str;
+        keys[size] = (long) start << 32 | (end > start ? RANGE : 0) | size;
+        // edits that come in text order need no sorting
+        ordered &= size == 0 || keys[size - 1] < keys[size];
+        size++;
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+    }
+}
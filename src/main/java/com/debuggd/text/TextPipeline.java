@@ -0,0 +1,394 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.CharClass;
+import com.debuggd.text.filter.TextFilter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A chain of per-char {@link Text} operations that runs in a single pass. For example
+ * <pre>
+ * TextPipeline normalize = TextPipeline.builder()
+ *         .trim().toSingleLine().normalizeWhiteSpaces().toLowerCase().deleteNonAlphaNumeric(true)
+ *         .build();
+ * </pre>
+ * gives the same result as calling these methods one after the other on a {@link Text}, but reads every char once
+ * and does not allocate per call once a thread has run the pipeline. None of the stages makes the text longer, so
+ * the result is written over the input as it is read.
+ * <p>
+ * All that the stages remember between chars fits into a few bits (was the last char a space, has a non-space been
+ * seen, ...). What the whole pipeline does with a Latin-1 char in a given state is worked out once per thread and
+ * looked up afterwards, unless it contains a {@link Builder#filter(TextFilter) filter}, which is called for every
+ * char. Pipelines are immutable and can be shared between threads.
+ */
+public final class TextPipeline {
+
+    private static final int LATIN1 = 256;
+    private static final int DELETED = -1;
+
+    // a step is the state after the char in the upper bits and the resulting char (or DELETED_BIT) in the lower ones
+    private static final int STATE_SHIFT = 17;
+    private static final int DELETED_BIT = 1 << 16;
+    private static final int MAX_STATE_BITS = 31 - STATE_SHIFT;
+    // transitions are cached for up to 2^8 states
+    private static final int MAX_CACHED_STATE_BITS = 8;
+    // a Run gives up a larger buffer after the call
+    private static final int MAX_KEPT_BUFFER = 1 << 16;
+
+    // stage kinds
+    private static final int MAP = 0;
+    private static final int FILTER = 1;
+    private static final int COLLAPSE_SPACES = 2;
+    private static final int TRIM_LEFT = 3;
+    private static final int TRIM_RIGHT = 4;
+    private static final int TRIM = 5;
+
+    private final int[] kinds;
+    private final CharStep[][] maps;
+    private final TextFilter[] filters;
+    // COLLAPSE_SPACES: the last char was a space, TRIM_LEFT and TRIM: a non-space has been seen
+    private final int[] flagBits;
+    // TRIM_RIGHT and TRIM: the chars are in a run of spaces that may turn out to be trailing
+    private final int[] trailingBits;
+    private final int allTrailingBits;
+    private final int stateBits;
+    private final boolean cached;
+    private final ThreadLocal<Run> runs = ThreadLocal.withInitial(() -> new Run(this));
+
+    private TextPipeline(List<Object> builderSteps) {
+        List<Object> stages = new ArrayList<>();
+        List<CharStep> fused = new ArrayList<>();
+        for (Object step : builderSteps) {
+            if (step instanceof CharStep) {
+                fused.add((CharStep) step);
+            } else {
+                if (!fused.isEmpty())
+                    stages.add(fused.toArray(new CharStep[0]));
+                fused.clear();
+                stages.add(step);
+            }
+        }
+        if (!fused.isEmpty())
+            stages.add(fused.toArray(new CharStep[0]));
+
+        kinds = new int[stages.size()];
+        maps = new CharStep[kinds.length][];
+        filters = new TextFilter[kinds.length];
+        flagBits = new int[kinds.length];
+        trailingBits = new int[kinds.length];
+        int bits = 0;
+        int trailing = 0;
+        boolean pure = true;
+        for (int i = 0; i < kinds.length; i++) {
+            Object stage = stages.get(i);
+            if (stage instanceof CharStep[]) {
+                kinds[i] = MAP;
+                maps[i] = (CharStep[]) stage;
+            } else if (stage instanceof TextFilter) {
+                kinds[i] = FILTER;
+                filters[i] = (TextFilter) stage;
+                pure = false;
+            } else {
+                kinds[i] = (Integer) stage;
+                if (kinds[i] != TRIM_RIGHT)
+                    flagBits[i] = 1 << bits++;
+                if (kinds[i] == TRIM_RIGHT || kinds[i] == TRIM)
+                    trailing |= trailingBits[i] = 1 << bits++;
+            }
+        }
+        if (bits > MAX_STATE_BITS)
+            throw new IllegalStateException("too many trimming and whitespace stages: " + kinds.length);
+        allTrailingBits = trailing;
+        stateBits = bits;
+        cached = pure && bits <= MAX_CACHED_STATE_BITS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Runs the pipeline over {@code text} and replaces its content with the result.
+     */
+    public Text apply(Text text) {
+        Run run = runs.get();
+        int length = text.length();
+        char[] chars = run.buffer(length);
+        try {
+            text.getChars(0, length, chars, 0);
+            return text.replaceContent(chars, 0, run.transform(chars, 0, length));
+        } finally {
+            run.release();
+        }
+    }
+
+    public String apply(CharSequence input) {
+        if (input == null)
+            return null;
+        Run run = runs.get();
+        int length = input.length();
+        char[] chars = run.buffer(length);
+        try {
+            if (input instanceof String) {
+                ((String) input).getChars(0, length, chars, 0);
+            } else {
+                for (int i = 0; i < length; i++)
+                    chars[i] = input.charAt(i);
+            }
+            return new String(chars, 0, run.transform(chars, 0, length));
+        } finally {
+            run.release();
+        }
+    }
+
+    /**
+     * Transforms {@code chars[start, end)} in place.
+     *
+     * @return the end of the result, which starts at {@code start}
+     */
+    public int apply(char[] chars, int start, int end) {
+        if (start < 0 || end > chars.length || start > end)
+            throw new ArrayIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + chars.length);
+        return runs.get().transform(chars, start, end);
+    }
+
+    /**
+     * Streams {@code in} through the pipeline into {@code out} in chunks of {@link TextStreams#BUFFER_SIZE} chars.
+     * Neither stream is closed.
+     * <p>
+     * Memory does not grow with the input, except that right trimming has to hold back a run of spaces until it
+     * sees whether a non-space follows.
+     */
+    public void apply(Reader in, Writer out) throws IOException {
+        runs.get().stream(in, out);
+    }
+
+    /**
+     * Runs {@code c} through all stages in {@code state}.
+     */
+    private int step(int state, char c) {
+        for (int i = 0; i < kinds.length; i++) {
+            int kind = kinds[i];
+            if (kind == MAP) {
+                int mapped = c;
+                for (CharStep map : maps[i])
+                    if ((mapped = map.apply((char) mapped)) == DELETED)
+                        return state << STATE_SHIFT | DELETED_BIT;
+                c = (char) mapped;
+            } else if (kind == FILTER) {
+                if (!filters[i].accept(c))
+                    return state << STATE_SHIFT | DELETED_BIT;
+            } else if (kind == COLLAPSE_SPACES) {
+                if (Text.isSpace(c)) {
+                    if ((state & flagBits[i]) != 0)
+                        return state << STATE_SHIFT | DELETED_BIT;
+                    state |= flagBits[i];
+                    c = ' ';
+                } else {
+                    state &= ~flagBits[i];
+                }
+            } else if (Text.isSpace(c)) {
+                if (kind != TRIM_RIGHT && (state & flagBits[i]) == 0)
+                    return state << STATE_SHIFT | DELETED_BIT;
+                state |= trailingBits[i];
+            } else {
+                state = (state | flagBits[i]) & ~trailingBits[i];
+            }
+        }
+        return state << STATE_SHIFT | c;
+    }
+
+    public static final class Builder {
+
+        private final List<Object> steps = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Keeps the chars accepted by {@code filter}, which is called for every char that reaches it in every run.
+         * A {@link CharClass} is known to depend on the char only, so it does not keep the pipeline from caching
+         * (see {@link CharClass#compile(TextFilter)}).
+         */
+        public Builder filter(TextFilter filter) {
+            if (filter instanceof CharClass)
+                return keep(filter);
+            if (filter != null)
+                steps.add(filter);
+            return this;
+        }
+
+        public Builder deleteDigits() {
+            return keep(Text.DELETE_DIGITS);
+        }
+
+        public Builder deleteLetters() {
+            return keep(Text.DELETE_LETTERS);
+        }
+
+        public Builder deleteNonAlphaNumeric(boolean leaveWhitespaces) {
+            return keep(Text.deleteNonAlphaNumericFilter(leaveWhitespaces));
+        }
+
+        public Builder toSingleLine() {
+            return keep(Text.SINGLE_LINE);
+        }
+
+        public Builder toLowerCase() {
+            steps.add((CharStep) Character::toLowerCase);
+            return this;
+        }
+
+        public Builder toUpperCase() {
+            steps.add((CharStep) Character::toUpperCase);
+            return this;
+        }
+
+        public Builder normalizeWhiteSpaces() {
+            steps.add(COLLAPSE_SPACES);
+            return this;
+        }
+
+        public Builder trim() {
+            steps.add(TRIM);
+            return this;
+        }
+
+        public Builder trimLeft() {
+            steps.add(TRIM_LEFT);
+            return this;
+        }
+
+        public Builder trimRight() {
+            steps.add(TRIM_RIGHT);
+            return this;
+        }
+
+        private Builder keep(TextFilter filter) {
+            steps.add((CharStep) c -> filter.accept(c) ? c : DELETED);
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if the pipeline has more than 14 trimming and whitespace stages
+         */
+        public TextPipeline build() {
+            return new TextPipeline(steps);
+        }
+    }
+
+    /**
+     * A case mapping or built-in filter: the mapped char, or {@link #DELETED}. These depend on nothing but the char.
+     */
+    @FunctionalInterface
+    private interface CharStep {
+        int apply(char c);
+    }
+
+    /**
+     * The transition cache and buffer of one thread.
+     */
+    private static final class Run {
+
+        private final TextPipeline pipeline;
+        // transitions[state][c] is step(state, c) + 1, 0 until it has been worked out
+        private final int[][] transitions;
+        // by trailing bit: where the output stood when the current run of spaces reached the stage
+        private final int[] trailingFrom = new int[MAX_STATE_BITS];
+        private char[] buffer = new char[64];
+        private int state;
+
+        Run(TextPipeline pipeline) {
+            this.pipeline = pipeline;
+            transitions = pipeline.cached ? new int[1 << pipeline.stateBits][] : null;
+        }
+
+        char[] buffer(int length) {
+            if (buffer.length < length)
+                buffer = new char[Math.max(length, buffer.length * 2)];
+            return buffer;
+        }
+
+        void release() {
+            if (buffer.length > MAX_KEPT_BUFFER)
+                buffer = new char[64];
+        }
+
+        int transform(char[] chars, int start, int end) {
+            state = 0;
+            return trailingStart(transform(chars, start, start, end));
+        }
+
+        void stream(Reader in, Writer out) throws IOException {
+            state = 0;
+            char[] chars = new char[TextStreams.BUFFER_SIZE];
+            // chars[0, held) went through the pipeline and may still be cut off by right trimming
+            int held = 0;
+            int read;
+            while ((read = in.read(chars, held, chars.length - held)) != -1) {
+                int write = transform(chars, held, held, held + read);
+                int flush = trailingStart(write);
+                out.write(chars, 0, flush);
+                System.arraycopy(chars, flush, chars, 0, write - flush);
+                for (int i = 0; i < trailingFrom.length; i++)
+                    trailingFrom[i] -= flush;
+                held = write - flush;
+                if (held == chars.length)
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            out.write(chars, 0, trailingStart(held));
+        }
+
+        /**
+         * Runs {@code chars[read, end)} through the pipeline, starting in {@link #state}, and writes the result from
+         * {@code write} on, which must not be greater than {@code read}.
+         * <p>
+         * Right trimming lets spaces through and remembers where the output stood when a run of them started, so
+         * that it can be cut back there at the end (see {@link #trailingStart(int)}). No stage turns a space into a
+         * non-space, so whatever the stages behind make of that run is at the end of the output and nothing before
+         * it depends on it.
+         *
+         * @return the end of the output
+         */
+        private int transform(char[] chars, int write, int read, int end) {
+            int trailingBits = pipeline.allTrailingBits;
+            int state = this.state;
+            for (; read < end; read++) {
+                char c = chars[read];
+                int step = transitions != null && c < LATIN1 ? cachedStep(state, c) : pipeline.step(state, c);
+                int next = step >>> STATE_SHIFT;
+                for (int entered = next & ~state & trailingBits; entered != 0; entered &= entered - 1)
+                    trailingFrom[Integer.numberOfTrailingZeros(entered)] = write;
+                state = next;
+                if ((step & DELETED_BIT) == 0)
+                    chars[write++] = (char) step;
+            }
+            this.state = state;
+            return write;
+        }
+
+        /**
+         * Where the output ends if the input ends here.
+         */
+        private int trailingStart(int write) {
+            for (int trailing = state & pipeline.allTrailingBits; trailing != 0; trailing &= trailing - 1)
+                write = Math.min(write, trailingFrom[Integer.numberOfTrailingZeros(trailing)]);
+            return write;
+        }
+
+        private int cachedStep(int state, char c) {
+            int[] row = transitions[state];
+            if (row == null)
+                row = transitions[state] = new int[LATIN1];
+            int step = row[c] - 1;
+            if (step == -1)
+                row[c] = (step = pipeline.step(state, c)) + 1;
+            return step;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.debuggd.text;
+
+/**
+ * A bounded stack of {@link Text} instances for loops that would otherwise create a text per record. Released texts
+ * keep their memory and {@link #acquire(CharSequence)} {@link Text#reset(CharSequence) resets} one to the next
+ * record, so that a steady loop does not allocate for its texts.
+ * <p>
+ * A pool is not thread-safe, every thread needs its own, e.g.
+ * <pre>
+ * private static final ThreadLocal&lt;TextPool&gt; TEXTS = ThreadLocal.withInitial(() -&gt; new TextPool(16));
+ * </pre>
+ */
+public final class TextPool {
+
+    private final Text[] texts;
+    private int size;
+
+    /**
+     * @param capacity how many released texts are kept at most, any more are left to the garbage collector
+     * @throws IllegalArgumentException If {@code capacity} is not positive.
+     */
+    public TextPool(int capacity) throws IllegalArgumentException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("parameter 'capacity' must be positive");
+        }
+        texts = new Text[capacity];
+    }
+
+    /**
+     * A released text reset to {@code content}, or a new one if there is none.
+     */
+    public Text acquire(CharSequence content) {
+        if (size == 0)
+            return new Text().reset(content);
+        Text text = texts[--size];
+        texts[size] = null;
+        return text.reset(content);
+    }
+
+    /**
+     * Keeps {@code text} for a later {@link #acquire(CharSequence)} if there is room. The caller must not use it
+     * afterwards, nor release it twice.
+     */
+    public void release(Text text) {
+        if (text != null && size < texts.length)
+            texts[size++] = text;
+    }
+
+    /**
+     * The number of texts that are waiting to be acquired.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,107 @@
+package com.debuggd.text;
+
+/**
+ * The chars behind a {@link Text}. All indices are relative to the text and have already been checked by the caller.
+ */
+abstract class TextStorage {
+
+    /**
+     * Flat storage with at least this many chars is turned into a rope when it gets edited in the middle.
+     */
+    static final int ROPE_THRESHOLD = 1 << 20;
+
+    abstract int length();
+
+    abstract char charAt(int index);
+
+    /**
+     * Index of the first occurrence of {@code str} at or after {@code from}, or -1.
+     */
+    abstract int indexOf(String str, int from);
+
+    /**
+     * Index of the first match of {@code searcher} in {@code [from, to)}, or -1. {@code text} reads this storage.
+     */
+    int indexOf(Searcher searcher, int from, int to, CharSequence text) {
+        return searcher.find(text, from, to);
+    }
+
+    /**
+     * Index of the last occurrence of {@code str}, or -1.
+     */
+    abstract int lastIndexOf(String str);
+
+    /**
+     * Index of the first {@code c} at or after {@code from}, or -1.
+     */
+    int indexOf(char c, int from) {
+        for (int i = from, length = length(); i < length; i++)
+            if (charAt(i) == c)
+                return i;
+        return -1;
+    }
+
+    int count(char c) {
+        int count = 0;
+        for (int i = 0, length = length(); i < length; i++)
+            if (charAt(i) == c)
+                count++;
+        return count;
+    }
+
+    abstract void getChars(int start, int end, char[] dst, int dstBegin);
+
+    abstract String substring(int start, int end);
+
+    /**
+     * @return the storage that holds the new content, which is a new one if this one cannot hold it
+     */
+    abstract TextStorage setContent(StringBuilder content);
+
+    /**
+     * Replaces the text with {@code chars[start, end)}, reusing the current buffer where possible.
+     *
+     * @return the storage that holds the new content, which is a new one if this one cannot hold it
+     */
+    abstract TextStorage setContent(char[] chars, int start, int end);
+
+    /**
+     * Replaces the text with a copy of {@code content}, reusing the current buffer where possible.
+     *
+     * @return the storage that holds the new content, which is a new one if this one cannot hold it
+     */
+    abstract TextStorage reset(CharSequence content);
+
+    /**
+     * Returns a storage with the same content that is independent of this one as far as edits are concerned.
+     */
+    abstract TextStorage share();
+
+    abstract RopeStorage toRope();
+
+    /**
+     * This storage if it can be edited, otherwise one with the same chars that can. Every edit goes through it.
+     */
+    abstract EditableStorage writable();
+
+    /**
+     * A storage that reads the same chars and can be read by another thread at the same time, as long as no one
+     * edits. Storages whose reads keep no state, like a cursor or a decoded block, return themselves.
+     */
+    TextStorage reader() {
+        return this;
+    }
+
+    /**
+     * A private copy of {@code [start, end)} that can be edited independently of this storage.
+     */
+    EditableStorage slice(int start, int end) {
+        return Latin1Storage.of(substring(start, end));
+    }
+
+    /**
+     * Frees the capacity that edits left unused.
+     */
+    void trimToSize() {
+    }
+}
@@ -0,0 +1,124 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.TextFilter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * {@link Text} operations for inputs that do not fit into memory. They read a {@link Reader} chunk by chunk and
+ * write the result to a {@link Writer}, the memory they need does not depend on the length of the input. The
+ * streams are not closed.
+ * <p>
+ * Byte channels are read and written through {@link #run(ReadableByteChannel, WritableByteChannel, Charset,
+ * Operation)}, e.g.
+ * <pre>
+ * TextStreams.run(in, out, StandardCharsets.UTF_8,
+ *         (reader, writer) -&gt; TextStreams.replaceAll(reader, writer, "\t", " "));
+ * </pre>
+ */
+public final class TextStreams {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private static final TextPipeline SINGLE_LINE = TextPipeline.builder().toSingleLine().build();
+    private static final TextPipeline NORMALIZED_WHITE_SPACES = TextPipeline.builder().normalizeWhiteSpaces().build();
+
+    private TextStreams() {
+    }
+
+    @FunctionalInterface
+    public interface Operation {
+        void run(Reader in, Writer out) throws IOException;
+    }
+
+    /**
+     * Runs {@code operation} over the chars decoded from {@code in} and writes them encoded to {@code out}, both in
+     * {@code charset}.
+     */
+    public static void run(ReadableByteChannel in, WritableByteChannel out, Charset charset, Operation operation)
+            throws IOException {
+        Writer writer = Channels.newWriter(out, charset.newEncoder(), BUFFER_SIZE);
+        operation.run(Channels.newReader(in, charset.newDecoder(), BUFFER_SIZE), writer);
+        writer.flush();
+    }
+
+    public static void toSingleLine(Reader in, Writer out) throws IOException {
+        SINGLE_LINE.apply(in, out);
+    }
+
+    public static void normalizeWhiteSpaces(Reader in, Writer out) throws IOException {
+        NORMALIZED_WHITE_SPACES.apply(in, out);
+    }
+
+    public static void filter(Reader in, Writer out, TextFilter filterFunction) throws IOException {
+        TextPipeline.builder().filter(filterFunction).build().apply(in, out);
+    }
+
+    public static void deleteAll(Reader in, Writer out, String rmStr) throws IOException {
+        replaceAll(in, out, rmStr, "");
+    }
+
+    /**
+     * Replaces the occurrences of {@code replaceWhat} from left to right like {@link Text#replaceAll(String,
+     * String)}, also those that span two chunks: the last {@code replaceWhat.length() - 1} chars of a chunk are
+     * kept back until the next one has been read.
+     */
+    public static void replaceAll(Reader in, Writer out, String replaceWhat, String replaceWith) throws IOException {
+        if (Text.anyBlank(replaceWhat)) {
+            copy(in, out);
+            return;
+        }
+        if (Text.anyBlank(replaceWith))
+            replaceWith = "";
+
+        char[] what = replaceWhat.toCharArray();
+        char[] chars = new char[Math.max(BUFFER_SIZE, 2 * what.length)];
+        int length = 0;
+        int read;
+        while ((read = in.read(chars, length, chars.length - length)) != -1) {
+            length += read;
+            int pos = 0;
+            int hit;
+            while ((hit = indexOf(chars, pos, length, what)) != -1) {
+                out.write(chars, pos, hit - pos);
+                out.write(replaceWith);
+                pos = hit + what.length;
+            }
+            // an occurrence may start in the last what.length - 1 chars
+            int keep = Math.max(pos, length - what.length + 1);
+            out.write(chars, pos, keep - pos);
+            length -= keep;
+            System.arraycopy(chars, keep, chars, 0, length);
+        }
+        out.write(chars, 0, length);
+    }
+
+    private static int indexOf(char[] chars, int from, int to, char[] what) {
+        char first = what[0];
+        for (int last = to - what.length, i = from; i <= last; i++) {
+            if (chars[i] == first && regionMatches(chars, i + 1, what))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(char[] chars, int start, char[] what) {
+        for (int i = 1; i < what.length; i++)
+            if (chars[start++] != what[i])
+                return false;
+        return true;
+    }
+
+    private static void copy(Reader in, Writer out) throws IOException {
+        char[] chars = new char[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(chars)) != -1)
+            out.write(chars, 0, read);
+    }
+}
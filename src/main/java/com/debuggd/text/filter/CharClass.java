@@ -0,0 +1,186 @@
+package com.debuggd.text.filter;
+
+import java.util.Arrays;
+
+/**
+ * A set of chars, held as a table of 256 pages of 256 flags each, so that a lookup costs two array loads. Pages that
+ * are all in or all out of the class are shared, which keeps most classes at a few KB. Classes are immutable and can
+ * be combined with {@link #and(TextFilter)}, {@link #or(TextFilter)} and {@link #negate()}.
+ * <p>
+ * Any {@link TextFilter} that depends on nothing but the char can be turned into a class with
+ * {@link #compile(TextFilter)}, which calls it once per char.
+ */
+public final class CharClass implements TextFilter {
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final boolean[] NONE = new boolean[PAGE_SIZE];
+    private static final boolean[] ALL = new boolean[PAGE_SIZE];
+
+    static {
+        Arrays.fill(ALL, true);
+    }
+
+    /**
+     * The chars {@link com.debuggd.text.Text#isSpace(char)} treats as spaces: whitespace, Unicode space separators
+     * and a few zero width chars.
+     */
+    public static final CharClass SPACES = compile(c -> Character.isWhitespace(c) || Character.isSpaceChar(c)
+            || c == '\u180E' // MONGOLIAN VOWEL SEPARATOR
+            || c == '\u200B' // ZERO WIDTH SPACE
+            || c == '\uFEFF'); // ZERO WIDTH NO-BREAK SPACE
+    public static final CharClass WHITESPACE = compile(Character::isWhitespace);
+    public static final CharClass DIGITS = compile(Character::isDigit);
+    public static final CharClass LETTERS = compile(Character::isLetter);
+    public static final CharClass LETTERS_OR_DIGITS = compile(Character::isLetterOrDigit);
+    public static final CharClass LINE_BREAKS = of(
+            '\n', // Line Feed
+            '\r', // Carriage Return
+            '\u000b', // Vertical Tab
+            '\u000c', // Form Feed
+            '\u0085', // Next Line
+            '\u2028', // Line Separator
+            '\u2029'); // Paragraph Separator
+
+    private final boolean[][] pages;
+    /**
+     * The first page as 0 and 1, for {@link #latin1Flag(byte)}.
+     */
+    private final byte[] latin1 = new byte[PAGE_SIZE];
+
+    private CharClass(boolean[][] pages) {
+        this.pages = pages;
+        for (int i = 0; i < PAGE_SIZE; i++)
+            latin1[i] = (byte) (pages[0][i] ? 1 : 0);
+    }
+
+    /**
+     * The chars {@code filter} accepts. It is called once for every char and must not depend on anything else.
+     *
+     * @throws IllegalArgumentException If {@code filter} is {@code null}.
+     */
+    public static CharClass compile(TextFilter filter) throws IllegalArgumentException {
+        if (filter == null) {
+            throw new IllegalArgumentException("parameter 'filter' cannot be null");
+        }
+        if (filter instanceof CharClass)
+            return (CharClass) filter;
+        boolean[][] pages = new boolean[PAGE_SIZE][];
+        for (int page = 0; page < PAGE_SIZE; page++) {
+            boolean[] flags = new boolean[PAGE_SIZE];
+            for (int i = 0; i < PAGE_SIZE; i++)
+                flags[i] = filter.accept((char) (page << PAGE_BITS | i));
+            pages[page] = shared(flags);
+        }
+        return new CharClass(pages);
+    }
+
+    public static CharClass of(char... chars) {
+        boolean[][] pages = new boolean[PAGE_SIZE][];
+        Arrays.fill(pages, NONE);
+        if (chars != null) {
+            for (char c : chars) {
+                if (pages[c >>> PAGE_BITS] == NONE)
+                    pages[c >>> PAGE_BITS] = new boolean[PAGE_SIZE];
+                pages[c >>> PAGE_BITS][c & PAGE_MASK] = true;
+            }
+        }
+        return new CharClass(pages);
+    }
+
+    /**
+     * The chars from {@code first} to {@code last}, both included.
+     */
+    public static CharClass range(char first, char last) {
+        return compile(c -> first <= c && c <= last);
+    }
+
+    /**
+     * {@link #NONE} or {@link #ALL} instead of a page that equals one of them.
+     */
+    private static boolean[] shared(boolean[] flags) {
+        return Arrays.equals(flags, NONE) ? NONE : Arrays.equals(flags, ALL) ? ALL : flags;
+    }
+
+    public boolean contains(char c) {
+        return pages[c >>> PAGE_BITS][c & PAGE_MASK];
+    }
+
+    @Override
+    public boolean accept(char c) {
+        return contains(c);
+    }
+
+    /**
+     * 1 if the class contains the Latin-1 char stored as {@code latin1}, 0 if not. Kernels over one byte per char can
+     * add this to an index instead of branching on {@link #contains(char)}.
+     */
+    public int latin1Flag(byte latin1) {
+        return this.latin1[latin1 & PAGE_MASK];
+    }
+
+    public CharClass and(TextFilter other) {
+        boolean[][] otherPages = compile(other).pages;
+        boolean[][] pages = new boolean[PAGE_SIZE][];
+        for (int page = 0; page < PAGE_SIZE; page++) {
+            boolean[] a = this.pages[page], b = otherPages[page];
+            if (a == NONE || b == ALL) {
+                pages[page] = a;
+            } else if (b == NONE || a == ALL) {
+                pages[page] = b;
+            } else {
+                boolean[] flags = new boolean[PAGE_SIZE];
+                for (int i = 0; i < PAGE_SIZE; i++)
+                    flags[i] = a[i] && b[i];
+                pages[page] = shared(flags);
+            }
+        }
+        return new CharClass(pages);
+    }
+
+    public CharClass or(TextFilter other) {
+        boolean[][] otherPages = compile(other).pages;
+        boolean[][] pages = new boolean[PAGE_SIZE][];
+        for (int page = 0; page < PAGE_SIZE; page++) {
+            boolean[] a = this.pages[page], b = otherPages[page];
+            if (a == ALL || b == NONE) {
+                pages[page] = a;
+            } else if (b == ALL || a == NONE) {
+                pages[page] = b;
+            } else {
+                boolean[] flags = new boolean[PAGE_SIZE];
+                for (int i = 0; i < PAGE_SIZE; i++)
+                    flags[i] = a[i] || b[i];
+                pages[page] = shared(flags);
+            }
+        }
+        return new CharClass(pages);
+    }
+
+    public CharClass negate() {
+        boolean[][] pages = new boolean[PAGE_SIZE][];
+        for (int page = 0; page < PAGE_SIZE; page++) {
+            boolean[] a = this.pages[page];
+            if (a == NONE || a == ALL) {
+                pages[page] = a == NONE ? ALL : NONE;
+            } else {
+                boolean[] flags = new boolean[PAGE_SIZE];
+                for (int i = 0; i < PAGE_SIZE; i++)
+                    flags[i] = !a[i];
+                pages[page] = flags;
+            }
+        }
+        return new CharClass(pages);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CharClass && Arrays.deepEquals(pages, ((CharClass) o).pages);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(pages);
+    }
+}
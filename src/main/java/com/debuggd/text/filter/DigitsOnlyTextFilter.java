@@ -4,6 +4,6 @@ public class DigitsOnlyTextFilter implements TextFilter {
 
     @Override
     public boolean accept(char c) {
-        return Character.isDigit(c);
+        return CharClass.DIGITS.contains(c);
     }
 }
@@ -1,22 +1,15 @@
 package com.debuggd.text.filter;
 
-import java.util.HashSet;
-
 public class DigitsOnlyWithExceptionTextFilter implements TextFilter {
 
-
-    private HashSet<Character> exceptionChars = new HashSet<>();
+    private final CharClass acceptedChars;
 
     public DigitsOnlyWithExceptionTextFilter(char... exceptions) {
-        if (exceptions != null) {
-            for (char exceptionChar : exceptions) {
-                exceptionChars.add(exceptionChar);
-            }
-        }
+        acceptedChars = CharClass.DIGITS.or(CharClass.of(exceptions));
     }
 
     @Override
     public boolean accept(char c) {
-        return Character.isDigit(c) || exceptionChars.contains(c);
+        return acceptedChars.contains(c);
     }
 }
@@ -0,0 +1,42 @@
+package com.debuggd.text.regex;
+
+/**
+ * What {@link Regex} needs of a {@link java.util.regex.Matcher}, so a pattern can be run by either engine. The bounds
+ * of a region are transparent and not anchoring: the pattern sees the chars around it like in a search of the whole
+ * input, only a match has to lie within it.
+ */
+abstract class Finder {
+
+    /**
+     * Searches {@code input} from the start again, the region is all of it.
+     */
+    abstract Finder reset(CharSequence input);
+
+    abstract Finder region(int from, int to);
+
+    /**
+     * Searches behind the previous match, or one char further behind an empty one, like {@code Matcher.find()}.
+     */
+    abstract boolean find();
+
+    /**
+     * Resets and searches from {@code from}.
+     *
+     * @throws IndexOutOfBoundsException If {@code from} is not within the input.
+     */
+    abstract boolean find(int from);
+
+    /**
+     * Whether the pattern matches the whole region.
+     */
+    abstract boolean matches();
+
+    abstract int start();
+
+    abstract int end();
+
+    /**
+     * Whether the last search looked at the end of the region, so more input might have changed its result.
+     */
+    abstract boolean hitEnd();
+}
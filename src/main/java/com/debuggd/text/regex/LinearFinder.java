@@ -0,0 +1,554 @@
+package com.debuggd.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import static com.debuggd.text.regex.LinearPattern.*;
+
+/**
+ * Runs a {@link LinearPattern} in time linear in the length of the input, whatever the pattern.
+ * <p>
+ * A search first runs a DFA, whose states are sets of states of the NFA and are built when a char first leads to them,
+ * until some match ends. Unless the pattern has no match at all, a Pike VM then runs from the same start to the end
+ * of the match. Its threads are kept in the order a backtracking engine would try them, so it finds the same match as
+ * java.util.regex: the one that starts first, and of those the first in that order. Both run in O(n * m) for n chars
+ * and m states of the NFA; most chars take one lookup in a table of the DFA.
+ */
+final class LinearFinder extends Finder {
+
+    /**
+     * The DFA starts over when it has more states.
+     */
+    private static final int MAX_STATES = 1 << 10;
+    private static final int[] NONE = {};
+
+    // what the chars before a position are, anchors and word boundaries only need to know this
+    private static final int START = 1;
+    private static final int WORD = 2;
+    // the last char that is not a non-spacing mark is a letter or digit
+    private static final int LETTER_OR_DIGIT = 4;
+    private static final int CR = 8;
+    private static final int LF = 16;
+    private static final int LINE_TERMINATOR = 32;
+
+    private final LinearPattern pattern;
+    private final int[] ops;
+    private final int[] args;
+    private final int[] args2;
+    private final int[] depths;
+    private final int[] pcs;
+    private final IntPredicate[] sets;
+    private final int[] stack;
+    // the threads at the current position and the two behind it, a pair of surrogates is consumed at once
+    private Threads current;
+    private Threads next;
+    private Threads afterNext;
+    private final Threads closure;
+    private final Threads step;
+    private final HashMap<State, State> states = new HashMap<>();
+    private final List<State> stateList = new ArrayList<>();
+
+    private CharSequence input;
+    private int from;
+    private int to;
+    private int first = -1;
+    private int last;
+    private boolean hitEnd;
+
+    LinearFinder(LinearPattern pattern) {
+        this.pattern = pattern;
+        this.ops = pattern.ops;
+        this.args = pattern.args;
+        this.args2 = pattern.args2;
+        this.depths = pattern.depths;
+        this.pcs = pattern.pcs;
+        this.sets = pattern.sets;
+        int size = pattern.states();
+        this.stack = new int[2 * size + 1];
+        this.current = new Threads(size);
+        this.next = new Threads(size);
+        this.afterNext = new Threads(size);
+        this.closure = new Threads(size);
+        this.step = new Threads(size);
+    }
+
+    @Override
+    Finder reset(CharSequence input) {
+        this.input = input;
+        from = 0;
+        to = input.length();
+        first = -1;
+        last = 0;
+        hitEnd = false;
+        return this;
+    }
+
+    @Override
+    Finder region(int from, int to) {
+        if (from < 0 || from > to || to > input.length()) {
+            throw new IndexOutOfBoundsException("start " + from + ", end " + to + ", length " + input.length());
+        }
+        reset(input);
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    @Override
+    boolean find() {
+        int start = last;
+        if (start == first)
+            start++;
+        if (start < from)
+            start = from;
+        if (start > to) {
+            first = -1;
+            return false;
+        }
+        return search(start);
+    }
+
+    @Override
+    boolean find(int from) {
+        if (from < 0 || from > input.length()) {
+            throw new IndexOutOfBoundsException("Illegal start index");
+        }
+        reset(input);
+        return search(from);
+    }
+
+    @Override
+    boolean matches() {
+        hitEnd = false;
+        return run(from, true);
+    }
+
+    @Override
+    int start() {
+        if (first < 0) {
+            throw new IllegalStateException("No match available");
+        }
+        return first;
+    }
+
+    @Override
+    int end() {
+        if (first < 0) {
+            throw new IllegalStateException("No match available");
+        }
+        return last;
+    }
+
+    @Override
+    boolean hitEnd() {
+        return hitEnd;
+    }
+
+    private boolean search(int start) {
+        if (earliestEnd(start) == -1) {
+            first = -1;
+            hitEnd = true;
+            return false;
+        }
+        hitEnd = false;
+        return run(start, false);
+    }
+
+    /**
+     * Where the first match to end from {@code start} on ends, or -1 if there is none.
+     */
+    private int earliestEnd(int start) {
+        int n = input.length();
+        // before this, a transition depends on the chars only and not on how far the end of the input is
+        int cached = Math.min(to, n - 2);
+        State state = state(NONE, flagsAt(start));
+        int i = start;
+        while (true) {
+            char ch;
+            if (i < cached && (ch = input.charAt(i)) < 256) {
+                if (state.next == null)
+                    state.next = new int[256];
+                int transition = state.next[ch];
+                if (transition == 0)
+                    transition = state.next[ch] = transition(state, i, ch);
+                if (transition == 1)
+                    return i;
+                state = stateList.get(transition - 2);
+                i++;
+                continue;
+            }
+            int c = i < n ? Character.codePointAt(input, i) : -1;
+            if (close(state.kernel, i, state.flags, c))
+                return i;
+            if (i >= to)
+                return -1;
+            step.size = 0;
+            consume(c);
+            if (c > 0xFFFF && pattern.startsWithinPairs) {
+                // java.util.regex may also start a match between the chars of a pair
+                char low = input.charAt(i + 1);
+                if (close(NONE, i + 1, advance(state.flags, input.charAt(i)), low))
+                    return i + 1;
+                if (i + 1 < to)
+                    consume(low);
+            }
+            state = next(state, advance(state.flags, c));
+            i += Character.charCount(c);
+        }
+    }
+
+    /**
+     * Follows {@code state} over {@code c} at {@code i}.
+     *
+     * @return 1 if a match ends at {@code i}, otherwise the number of the state behind {@code c} plus two
+     */
+    private int transition(State state, int i, int c) {
+        if (close(state.kernel, i, state.flags, c))
+            return 1;
+        step.size = 0;
+        consume(c);
+        return next(state, advance(state.flags, c)).number + 2;
+    }
+
+    /**
+     * Puts the closure of {@code kernel} and of a thread that starts at {@code i} into {@link #closure}.
+     *
+     * @return whether a match ends at {@code i}
+     */
+    private boolean close(int[] kernel, int i, int flags, int c) {
+        closure.size = 0;
+        for (int state : kernel)
+            add(closure, state, 0, i, flags, c);
+        add(closure, 0, 0, i, flags, c);
+        for (int k = 0; k < closure.size; k++)
+            if (ops[pcs[closure.states[k]]] == MATCH)
+                return true;
+        return false;
+    }
+
+    /**
+     * Adds the states behind {@code c} of the closure to {@link #step}.
+     */
+    private void consume(int c) {
+        for (int k = 0; k < closure.size; k++) {
+            int pc = pcs[closure.states[k]];
+            if (ops[pc] <= ANY && accepts(pc, c)) {
+                int state = pattern.state(pc + 1, depths[pc]);
+                if (!step.contains(state))
+                    step.add(state, 0);
+            }
+        }
+    }
+
+    /**
+     * The state of the DFA for {@link #step}. When there are too many, the DFA starts over from {@code state}.
+     */
+    private State next(State state, int flags) {
+        int[] kernel = Arrays.copyOf(step.states, step.size);
+        Arrays.sort(kernel);
+        if (stateList.size() == MAX_STATES) {
+            states.clear();
+            stateList.clear();
+            if (state.next != null)
+                Arrays.fill(state.next, 0);
+        }
+        return state(kernel, flags);
+    }
+
+    private State state(int[] kernel, int flags) {
+        State state = new State(kernel, flags, stateList.size());
+        State known = states.putIfAbsent(state, state);
+        if (known != null)
+            return known;
+        stateList.add(state);
+        return state;
+    }
+
+    /**
+     * The Pike VM from {@code start}, anchored and only to the end of the region if {@code whole}.
+     */
+    private boolean run(int start, boolean whole) {
+        int n = input.length();
+        first = -1;
+        current.size = 0;
+        next.size = 0;
+        afterNext.size = 0;
+        int i = start;
+        int flags = flagsAt(start);
+        // the flags behind a pair of surrogates that starts one char before, or -1
+        int pairEnd = -1;
+        while (true) {
+            int c = i < n ? Character.codePointAt(input, i) : -1;
+            // like java.util.regex, a thread starts at every char, those before come first
+            if (first == -1 && (i == start || !whole && (pairEnd == -1 || pattern.startsWithinPairs)))
+                add(current, 0, i, i, flags, c);
+            if (current.size == 0 && next.size == 0 && (first != -1 || whole))
+                break;
+            boolean consume = i < to;
+            int length = consume ? Character.charCount(c) : 0;
+            int nextFlags = !consume ? 0 : pairEnd != -1 ? pairEnd : advance(flags, length == 2 ? input.charAt(i) : c);
+            int afterFlags = length == 2 ? advance(flags, c) : nextFlags;
+            int after = i + length;
+            int afterC = consume && after < n ? Character.codePointAt(input, after) : -1;
+            Threads target = length == 2 ? afterNext : next;
+            for (int k = 0; k < current.size; k++) {
+                int pc = pcs[current.states[k]];
+                int op = ops[pc];
+                if (op == MATCH) {
+                    if (whole && i != to)
+                        continue;
+                    first = current.starts[k];
+                    last = i;
+                    if (whole)
+                        return true;
+                    // a backtracking engine would not try the threads behind it
+                    break;
+                }
+                if (op <= ANY) {
+                    if (!consume)
+                        hitEnd = true;
+                    else if (accepts(pc, c))
+                        add(target, pattern.state(pc + 1, depths[pc]), current.starts[k], after, afterFlags, afterC);
+                }
+            }
+            if (!consume)
+                break;
+            Threads done = current;
+            current = next;
+            next = afterNext;
+            afterNext = done;
+            afterNext.size = 0;
+            i++;
+            flags = nextFlags;
+            pairEnd = length == 2 ? afterFlags : -1;
+        }
+        return first != -1 && !whole;
+    }
+
+    /**
+     * Adds {@code state} and those it leads to without consuming a char to {@code list}, in the order a backtracking
+     * engine would try them. One that is in the list already has come first.
+     */
+    private void add(Threads list, int state, int start, int i, int flags, int c) {
+        int top = 0;
+        stack[top++] = state;
+        while (top > 0) {
+            state = stack[--top];
+            if (list.contains(state))
+                continue;
+            list.add(state, start);
+            int pc = pcs[state];
+            int matched = state - pattern.offsets[pc];
+            switch (ops[pc]) {
+                case JMP:
+                    stack[top++] = pattern.state(args[pc], matched);
+                    break;
+                case SPLIT:
+                    stack[top++] = pattern.state(args2[pc], matched);
+                    stack[top++] = pattern.state(args[pc], matched);
+                    break;
+                case ITERATION:
+                    stack[top++] = pattern.state(pc + 1, Math.min(matched, args[pc] - 1));
+                    break;
+                case CHECK:
+                    // a round that matched nothing leaves the loop
+                    stack[top++] = pattern.state(matched >= args[pc] ? pc + 1 : args2[pc], matched);
+                    break;
+                case ASSERT:
+                    if (holds(args[pc], i, flags, c))
+                        stack[top++] = pattern.state(pc + 1, matched);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private boolean accepts(int pc, int c) {
+        switch (ops[pc]) {
+            case CHAR:
+                return args[pc] == c;
+            case SET:
+                return sets[args[pc]].test(c);
+            default:
+                switch (args[pc]) {
+                    case DOT_ALL:
+                        return true;
+                    case UNIX_DOT:
+                        return c != '\n';
+                    default:
+                        return !isLineTerminator(c);
+                }
+        }
+    }
+
+    /**
+     * Whether the anchor or boundary holds at {@code i}, behind chars described by {@code flags} and before
+     * {@code c}, with the same corner cases as in java.util.regex. Only $ and \Z without MULTILINE look further,
+     * at most two chars before the end of the input.
+     */
+    private boolean holds(int kind, int i, int flags, int c) {
+        int n = input.length();
+        switch (kind) {
+            case BEGIN:
+                return (flags & START) != 0;
+            case END:
+                return c == -1 && atEnd();
+            case DOLLAR:
+                if (i < n - 2 || i == n - 2 && (c != '\r' || input.charAt(i + 1) != '\n'))
+                    return false;
+                return dollar(flags, c, false);
+            case MULTILINE_DOLLAR:
+                return dollar(flags, c, true);
+            case UNIX_DOLLAR:
+                return (c == -1 || c == '\n' && i == n - 1) && atEnd();
+            case UNIX_MULTILINE_DOLLAR:
+                return c == '\n' || c == -1 && atEnd();
+            case MULTILINE_CARET:
+                if (c == -1)
+                    return !atEnd();
+                return (flags & START) != 0
+                        || (flags & LINE_TERMINATOR) != 0 && ((flags & CR) == 0 || c != '\n');
+            case UNIX_MULTILINE_CARET:
+                if (c == -1)
+                    return !atEnd();
+                return (flags & (START | LF)) != 0;
+            default:
+                boolean right;
+                if (c == -1)
+                    right = !atEnd();
+                else
+                    right = isWord(c) || isMark(c) && (flags & LETTER_OR_DIGIT) != 0;
+                return ((flags & WORD) != 0 != right) == (kind == BOUND);
+        }
+    }
+
+    private boolean dollar(int flags, int c, boolean multiline) {
+        if (c == '\n') {
+            // not between \r and \n
+            if ((flags & CR) != 0)
+                return false;
+            if (multiline)
+                return true;
+        } else if (isLineTerminator(c)) {
+            if (multiline)
+                return true;
+        } else if (c != -1) {
+            return false;
+        }
+        return atEnd();
+    }
+
+    /**
+     * Notes that the search looked at the end of the input, and returns {@code true}.
+     */
+    private boolean atEnd() {
+        hitEnd = true;
+        return true;
+    }
+
+    private int flagsAt(int i) {
+        if (i == 0)
+            return START;
+        int c = Character.codePointBefore(input, i);
+        int j = i - Character.charCount(c);
+        while (j > 0 && isMark(Character.codePointBefore(input, j)))
+            j -= Character.charCount(Character.codePointBefore(input, j));
+        boolean letterOrDigit = j > 0 && Character.isLetterOrDigit(Character.codePointBefore(input, j));
+        return advance(letterOrDigit ? LETTER_OR_DIGIT : 0, c);
+    }
+
+    /**
+     * The flags behind {@code c}, if {@code flags} are those before it.
+     */
+    private static int advance(int flags, int c) {
+        boolean mark = isMark(c);
+        int next = mark ? flags & LETTER_OR_DIGIT : Character.isLetterOrDigit(c) ? LETTER_OR_DIGIT : 0;
+        // a mark belongs to the char before it
+        if (isWord(c) || mark && (flags & LETTER_OR_DIGIT) != 0)
+            next |= WORD;
+        if (c == '\r')
+            next |= CR | LINE_TERMINATOR;
+        else if (c == '\n')
+            next |= LF | LINE_TERMINATOR;
+        else if (isLineTerminator(c))
+            next |= LINE_TERMINATOR;
+        return next;
+    }
+
+    private static boolean isWord(int c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isMark(int c) {
+        return Character.getType(c) == Character.NON_SPACING_MARK;
+    }
+
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+    }
+
+    /**
+     * States in the order they were added, each at most once, with the start of the match of each thread.
+     */
+    private static final class Threads {
+
+        final int[] states;
+        final int[] starts;
+        private final int[] index;
+        int size;
+
+        Threads(int capacity) {
+            states = new int[capacity];
+            starts = new int[capacity];
+            index = new int[capacity];
+        }
+
+        boolean contains(int state) {
+            int k = index[state];
+            return k < size && states[k] == state;
+        }
+
+        void add(int state, int start) {
+            index[state] = size;
+            states[size] = state;
+            starts[size++] = start;
+        }
+    }
+
+    /**
+     * A state of the DFA: the states of the NFA to go on at, and the flags of the chars before.
+     */
+    private static final class State {
+
+        final int[] kernel;
+        final int flags;
+        final int number;
+        final int hash;
+        // the transition for each char up to 0xFF, 0 if not known yet
+        int[] next;
+
+        State(int[] kernel, int flags, int number) {
+            this.kernel = kernel;
+            this.flags = flags;
+            this.number = number;
+            this.hash = 31 * Arrays.hashCode(kernel) + flags;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof State))
+                return false;
+            State other = (State) obj;
+            return flags == other.flags && Arrays.equals(kernel, other.kernel);
+        }
+    }
+}
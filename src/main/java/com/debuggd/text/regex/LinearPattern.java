@@ -0,0 +1,746 @@
+package com.debuggd.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A pattern of {@link Regex.Engine#LINEAR}, compiled to the program of a Thompson NFA that {@link LinearFinder} runs.
+ * <p>
+ * The syntax is that of java.util.regex without what needs backtracking or is rarely used: backreferences,
+ * lookarounds, atomic groups, possessive quantifiers, quantifiers on quantifiers, {@code \G}, {@code \R}, {@code \X},
+ * grapheme boundaries and the flags {@code x}, {@code c} and {@code U} are rejected. Classes, e.g. {@code [a-z&&[^c]]}
+ * or {@code \p{L}}, are decided by java.util.regex one char at a time, so they mean the same as there.
+ */
+final class LinearPattern {
+
+    // instructions, the first three consume a char
+    static final int CHAR = 0;      // the code point args[pc]
+    static final int SET = 1;       // a code point of sets[args[pc]]
+    static final int ANY = 2;       // '.', args[pc] is DOT, UNIX_DOT or DOT_ALL
+    static final int SPLIT = 3;     // goes on at args[pc], or else at args2[pc]
+    static final int JMP = 4;       // goes on at args[pc]
+    static final int ITERATION = 5; // starts a round of the loop of depth args[pc]
+    static final int CHECK = 6;     // ends the round, the loop is left to args2[pc] if it matched nothing
+    static final int ASSERT = 7;    // the anchor or boundary args[pc]
+    static final int MATCH = 8;
+
+    static final int DOT = 0;
+    static final int UNIX_DOT = 1;
+    static final int DOT_ALL = 2;
+
+    static final int BEGIN = 0;                 // ^ and \A
+    static final int END = 1;                   // \z
+    static final int DOLLAR = 2;                // $ and \Z
+    static final int MULTILINE_DOLLAR = 3;
+    static final int UNIX_DOLLAR = 4;
+    static final int UNIX_MULTILINE_DOLLAR = 5;
+    static final int MULTILINE_CARET = 6;
+    static final int UNIX_MULTILINE_CARET = 7;
+    static final int BOUND = 8;                 // \b
+    static final int NOT_BOUND = 9;             // \B
+
+    /**
+     * Larger programs are rejected, the memory of a search grows with the size.
+     */
+    static final int MAX_SIZE = 1 << 14;
+    private static final int MAX_STATES = 1 << 16;
+    private static final int MAX_DEPTH = 1 << 10;
+
+    final int[] ops;
+    final int[] args;
+    final int[] args2;
+    final IntPredicate[] sets;
+    /**
+     * The number of loops around each instruction whose body may match nothing. Like java.util.regex, a loop is left
+     * after a round that matched nothing, so a thread also knows for how many of them, from the outside in, the
+     * current round has matched a char. That gives {@code depths[pc] + 1} states for an instruction, numbered from
+     * {@code offsets[pc]} on.
+     */
+    final int[] depths;
+    final int[] offsets;
+    final int[] pcs;
+    /**
+     * Whether a search also starts a match between the chars of a pair of surrogates. java.util.regex skips them once
+     * the syntax of a pattern suggests that it may match a supplementary code point.
+     */
+    final boolean startsWithinPairs;
+
+    /**
+     * @throws IllegalArgumentException If {@code regex} fails to compile or uses syntax that is not supported.
+     */
+    LinearPattern(String regex) throws IllegalArgumentException {
+        // the syntax errors are those of java.util.regex
+        Pattern.compile(regex);
+        Compiler compiler = new Compiler(regex);
+        Node root = compiler.alternation();
+        if (compiler.p < regex.length()) {
+            throw compiler.unsupported("unbalanced parenthesis");
+        }
+        compiler.emit(root);
+        compiler.add(MATCH, 0, 0);
+        this.ops = Arrays.copyOf(compiler.ops, compiler.size);
+        this.args = Arrays.copyOf(compiler.args, compiler.size);
+        this.args2 = Arrays.copyOf(compiler.args2, compiler.size);
+        this.sets = compiler.sets.toArray(new IntPredicate[0]);
+        this.depths = Arrays.copyOf(compiler.depths, compiler.size);
+        this.offsets = new int[compiler.size];
+        int states = 0;
+        for (int pc = 0; pc < compiler.size; pc++) {
+            offsets[pc] = states;
+            states += depths[pc] + 1;
+        }
+        if (states > MAX_STATES) {
+            throw new IllegalArgumentException("pattern is too large for the linear engine, more than " + MAX_STATES
+                    + " states");
+        }
+        this.pcs = new int[states];
+        for (int pc = 0; pc < compiler.size; pc++) {
+            Arrays.fill(pcs, offsets[pc], offsets[pc] + depths[pc] + 1, pc);
+        }
+        // java.util.regex only shows it by what it finds, \B holds between the chars of the pair and not around them
+        String probe = "\\B(?:" + regex + (compiler.openQuote ? "\\E" : "") + ")??";
+        this.startsWithinPairs = Pattern.compile(probe).matcher("a\uD83D\uDE00A").find();
+    }
+
+    /**
+     * The number of states of the instructions.
+     */
+    int states() {
+        return pcs.length;
+    }
+
+    /**
+     * The state of {@code pc} where the current rounds of the {@code matched} outer loops have matched a char.
+     */
+    int state(int pc, int matched) {
+        return offsets[pc] + Math.min(matched, depths[pc]);
+    }
+
+    // the other nodes are instructions that consume a char or assert
+    private static final int CONCAT = 16;
+    private static final int ALTERNATION = 17;
+    private static final int QUANTIFIED = 18;
+
+    private static final class Node {
+        final int type;
+        final int value;
+        final Node[] children;
+        final int min;
+        final int max;
+        final boolean greedy;
+
+        Node(int type, int value) {
+            this(type, value, null, 0, 0, true);
+        }
+
+        Node(int type, List<Node> children) {
+            this(type, 0, children.toArray(new Node[0]), 0, 0, true);
+        }
+
+        Node(int type, int value, Node[] children, int min, int max, boolean greedy) {
+            this.type = type;
+            this.value = value;
+            this.children = children;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+    }
+
+    /**
+     * Parses a valid pattern of java.util.regex into nodes and emits their program.
+     */
+    private static final class Compiler {
+
+        final String regex;
+        int p;
+        int flags;
+        int depth;
+        final List<IntPredicate> sets = new ArrayList<>();
+        int[] ops = new int[16];
+        int[] args = new int[16];
+        int[] args2 = new int[16];
+        int[] depths = new int[16];
+        int size;
+        // the depth of the instructions added
+        int loops;
+        // whether a \Q at the top runs to the end
+        boolean openQuote;
+
+        Compiler(String regex) {
+            this.regex = regex;
+        }
+
+        Node alternation() {
+            List<Node> alternatives = new ArrayList<>();
+            alternatives.add(sequence());
+            while (p < regex.length() && regex.charAt(p) == '|') {
+                p++;
+                alternatives.add(sequence());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Node(ALTERNATION, alternatives);
+        }
+
+        Node sequence() {
+            List<Node> items = new ArrayList<>();
+            while (p < regex.length() && regex.charAt(p) != '|' && regex.charAt(p) != ')') {
+                int count = items.size();
+                atom(items);
+                if (isQuantifier()) {
+                    if (items.size() == count) {
+                        throw unsupported("quantifier without operand");
+                    }
+                    items.set(items.size() - 1, quantified(items.get(items.size() - 1)));
+                    if (isQuantifier()) {
+                        throw unsupported("quantifier on a quantifier");
+                    }
+                }
+            }
+            return items.size() == 1 ? items.get(0) : new Node(CONCAT, items);
+        }
+
+        boolean isQuantifier() {
+            if (p == regex.length()) {
+                return false;
+            }
+            char c = regex.charAt(p);
+            return c == '*' || c == '+' || c == '?' || c == '{';
+        }
+
+        Node quantified(Node node) {
+            int min;
+            int max;
+            char c = regex.charAt(p++);
+            if (c == '*') {
+                min = 0;
+                max = -1;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+            } else {
+                int close = regex.indexOf('}', p);
+                String bounds = regex.substring(p, close).trim();
+                int comma = bounds.indexOf(',');
+                p = close + 1;
+                try {
+                    min = Integer.parseInt(comma == -1 ? bounds : bounds.substring(0, comma).trim());
+                    max = comma == -1 ? min : bounds.substring(comma + 1).trim().isEmpty() ? -1
+                            : Integer.parseInt(bounds.substring(comma + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw unsupported("repetition");
+                }
+                if (min > MAX_SIZE || max > MAX_SIZE) {
+                    throw unsupported("repetition above " + MAX_SIZE);
+                }
+            }
+            boolean greedy = true;
+            if (p < regex.length() && regex.charAt(p) == '?') {
+                greedy = false;
+                p++;
+            } else if (p < regex.length() && regex.charAt(p) == '+') {
+                throw unsupported("possessive quantifier");
+            }
+            return new Node(QUANTIFIED, 0, new Node[]{node}, min, max, greedy);
+        }
+
+        /**
+         * Adds the nodes of the atom at {@code p}: none for a group that only sets flags, one for each char of a
+         * quote.
+         */
+        void atom(List<Node> items) {
+            int c = regex.codePointAt(p);
+            switch (c) {
+                case '(':
+                    Node group = group();
+                    if (group != null) {
+                        items.add(group);
+                    }
+                    break;
+                case '[':
+                    int end = classEnd(p);
+                    items.add(set(regex.substring(p, end)));
+                    p = end;
+                    break;
+                case '.':
+                    p++;
+                    items.add(new Node(ANY, has(Pattern.DOTALL) ? DOT_ALL : has(Pattern.UNIX_LINES) ? UNIX_DOT : DOT));
+                    break;
+                case '^':
+                    p++;
+                    items.add(new Node(ASSERT, !has(Pattern.MULTILINE) ? BEGIN
+                            : has(Pattern.UNIX_LINES) ? UNIX_MULTILINE_CARET : MULTILINE_CARET));
+                    break;
+                case '$':
+                    p++;
+                    items.add(new Node(ASSERT, has(Pattern.UNIX_LINES)
+                            ? has(Pattern.MULTILINE) ? UNIX_MULTILINE_DOLLAR : UNIX_DOLLAR
+                            : has(Pattern.MULTILINE) ? MULTILINE_DOLLAR : DOLLAR));
+                    break;
+                case '\\':
+                    escape(items);
+                    break;
+                default:
+                    p += Character.charCount(c);
+                    items.add(literal(c));
+            }
+        }
+
+        /**
+         * @return the group at {@code p}, or {@code null} if it only sets flags for the rest of the enclosing one
+         */
+        Node group() {
+            int saved = flags;
+            p++;
+            if (regex.charAt(p) == '?') {
+                p++;
+                char kind = regex.charAt(p);
+                if (kind == '=' || kind == '!' || kind == '>'
+                        || kind == '<' && (regex.charAt(p + 1) == '=' || regex.charAt(p + 1) == '!')) {
+                    throw unsupported("lookarounds and atomic groups");
+                }
+                if (kind == '<') {
+                    p = regex.indexOf('>', p) + 1;
+                } else if (kind == ':') {
+                    p++;
+                } else {
+                    boolean on = true;
+                    for (char c = regex.charAt(p); c != ')' && c != ':'; c = regex.charAt(++p)) {
+                        int flag = c == '-' ? 0 : flag(c);
+                        if (c == '-') {
+                            on = false;
+                        } else if (on) {
+                            flags |= flag;
+                        } else {
+                            flags &= ~flag;
+                        }
+                    }
+                    if (regex.charAt(p++) == ')') {
+                        return null;
+                    }
+                }
+            }
+            if (++depth > MAX_DEPTH) {
+                throw unsupported("groups nested deeper than " + MAX_DEPTH);
+            }
+            Node group = alternation();
+            depth--;
+            p++;
+            flags = saved;
+            return group;
+        }
+
+        int flag(char c) {
+            switch (c) {
+                case 'i':
+                    return Pattern.CASE_INSENSITIVE;
+                case 'm':
+                    return Pattern.MULTILINE;
+                case 's':
+                    return Pattern.DOTALL;
+                case 'u':
+                    return Pattern.UNICODE_CASE;
+                case 'd':
+                    return Pattern.UNIX_LINES;
+                default:
+                    throw unsupported("flag " + c);
+            }
+        }
+
+        void escape(List<Node> items) {
+            char c = regex.charAt(p + 1);
+            switch (c) {
+                case 'b':
+                    if (regex.startsWith("{", p + 2)) {
+                        throw unsupported("grapheme boundary");
+                    }
+                    items.add(assertion(BOUND));
+                    return;
+                case 'B':
+                    items.add(assertion(NOT_BOUND));
+                    return;
+                case 'A':
+                    items.add(assertion(BEGIN));
+                    return;
+                case 'z':
+                    items.add(assertion(END));
+                    return;
+                case 'Z':
+                    items.add(assertion(has(Pattern.UNIX_LINES) ? UNIX_DOLLAR : DOLLAR));
+                    return;
+                case 'Q':
+                    int end = regex.indexOf("\\E", p + 2);
+                    if (end == -1) {
+                        end = regex.length();
+                        openQuote = true;
+                    }
+                    for (int i = p + 2; i < end; i += Character.charCount(regex.codePointAt(i))) {
+                        items.add(literal(regex.codePointAt(i)));
+                    }
+                    p = Math.min(end + 2, regex.length());
+                    return;
+                case 'G':
+                case 'R':
+                case 'X':
+                case 'E':
+                case 'k':
+                    throw unsupported("\\" + c);
+                default:
+                    if (c >= '1' && c <= '9') {
+                        throw unsupported("backreference");
+                    }
+                    end = escapeEnd(p);
+                    // letters and digits name a class or a char, anything else stands for itself
+                    items.add(Character.isLetterOrDigit(c) ? set(regex.substring(p, end))
+                            : literal(regex.codePointAt(p + 1)));
+                    p = end;
+            }
+        }
+
+        Node assertion(int kind) {
+            p += 2;
+            return new Node(ASSERT, kind);
+        }
+
+        /**
+         * The end of the escape that starts with the backslash at {@code i}.
+         */
+        int escapeEnd(int i) {
+            char c = regex.charAt(i + 1);
+            switch (c) {
+                case 'p':
+                case 'P':
+                case 'N':
+                case 'x':
+                    if (regex.charAt(i + 2) == '{') {
+                        return regex.indexOf('}', i + 2) + 1;
+                    }
+                    return c == 'x' ? i + 4 : i + 3;
+                case 'u':
+                    // like java.util.regex, a surrogate pair may be written as two escapes
+                    if (Character.isHighSurrogate((char) Integer.parseInt(regex.substring(i + 2, i + 6), 16))
+                            && regex.startsWith("\\u", i + 6) && i + 12 <= regex.length()
+                            && Character.isLowSurrogate((char) Integer.parseInt(regex.substring(i + 8, i + 12), 16))) {
+                        return i + 12;
+                    }
+                    return i + 6;
+                case 'c':
+                    return i + 3;
+                case '0':
+                    int end = i + 3;
+                    if (isOctal(end)) {
+                        end++;
+                        if (isOctal(end) && regex.charAt(i + 2) <= '3') {
+                            end++;
+                        }
+                    }
+                    return end;
+                default:
+                    return i + 1 + Character.charCount(regex.codePointAt(i + 1));
+            }
+        }
+
+        boolean isOctal(int i) {
+            return i < regex.length() && regex.charAt(i) >= '0' && regex.charAt(i) <= '7';
+        }
+
+        /**
+         * The end of the class that starts with the bracket at {@code i}. As in java.util.regex, a ']' right at the
+         * start of a class stands for itself.
+         */
+        int classEnd(int i) {
+            int depth = 0;
+            boolean first = false;
+            while (true) {
+                char c = regex.charAt(i);
+                if (c == '[') {
+                    depth++;
+                    i++;
+                    if (regex.charAt(i) == '^') {
+                        i++;
+                    }
+                    first = true;
+                    continue;
+                }
+                if (c == ']' && !first) {
+                    i++;
+                    if (--depth == 0) {
+                        return i;
+                    }
+                    continue;
+                }
+                if (c == '\\' && regex.charAt(i + 1) == 'Q') {
+                    int end = regex.indexOf("\\E", i + 2);
+                    i = end == -1 ? regex.length() : end + 2;
+                } else if (c == '\\') {
+                    i = escapeEnd(i);
+                } else {
+                    i++;
+                }
+                first = false;
+            }
+        }
+
+        Node set(String regex) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex, flags & (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+            } catch (PatternSyntaxException e) {
+                throw unsupported(regex);
+            }
+            return set(new Delegated(pattern));
+        }
+
+        Node set(IntPredicate predicate) {
+            sets.add(new Latin1Table(predicate));
+            return new Node(SET, sets.size() - 1);
+        }
+
+        /**
+         * A char that stands for itself, compared like in java.util.regex when case is ignored.
+         */
+        Node literal(int c) {
+            if (!has(Pattern.CASE_INSENSITIVE) || c < 128 && !Character.isLetter(c)) {
+                return new Node(CHAR, c);
+            }
+            if (has(Pattern.UNICODE_CASE)) {
+                int folded = Character.toLowerCase(Character.toUpperCase(c));
+                return set(x -> x == c || Character.toLowerCase(Character.toUpperCase(x)) == folded);
+            }
+            if (c >= 128) {
+                return new Node(CHAR, c);
+            }
+            int lower = Character.toLowerCase(c);
+            int upper = Character.toUpperCase(c);
+            return set(x -> x == lower || x == upper);
+        }
+
+        boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        void emit(Node node) {
+            switch (node.type) {
+                case CONCAT:
+                    for (Node child : node.children) {
+                        emit(child);
+                    }
+                    break;
+                case ALTERNATION:
+                    int[] jumps = new int[node.children.length - 1];
+                    for (int k = 0; k < jumps.length; k++) {
+                        int split = add(SPLIT, size + 1, 0);
+                        emit(node.children[k]);
+                        jumps[k] = add(JMP, 0, 0);
+                        args2[split] = size;
+                    }
+                    emit(node.children[jumps.length]);
+                    for (int jump : jumps) {
+                        args[jump] = size;
+                    }
+                    break;
+                case QUANTIFIED:
+                    if (nullable(node.children[0])) {
+                        emitLoop(node);
+                        break;
+                    }
+                    Node child = node.children[0];
+                    for (int k = 0; k < node.min; k++) {
+                        emit(child);
+                    }
+                    if (node.max == -1) {
+                        int loop = add(SPLIT, 0, 0);
+                        emit(child);
+                        add(JMP, loop, 0);
+                        branch(loop, loop + 1, size, node.greedy);
+                    } else if (node.max > node.min) {
+                        int[] splits = new int[node.max - node.min];
+                        for (int k = 0; k < splits.length; k++) {
+                            splits[k] = add(SPLIT, 0, 0);
+                            emit(child);
+                        }
+                        for (int split : splits) {
+                            branch(split, split + 1, size, node.greedy);
+                        }
+                    }
+                    break;
+                default:
+                    add(node.type, node.value, 0);
+            }
+        }
+
+        /**
+         * A loop whose body may match nothing, each round checks whether it did.
+         */
+        void emitLoop(Node node) {
+            Node child = node.children[0];
+            int depth = ++loops;
+            int rounds = node.max == -1 ? node.min + 1 : node.max;
+            int[] checks = new int[rounds];
+            int[] splits = new int[rounds];
+            for (int k = 0; k < rounds; k++) {
+                loops = depth - 1;
+                splits[k] = k < node.min ? -1 : add(SPLIT, 0, 0);
+                loops = depth;
+                add(ITERATION, depth, 0);
+                emit(child);
+                checks[k] = add(CHECK, depth, 0);
+            }
+            loops = depth - 1;
+            if (node.max == -1) {
+                add(JMP, splits[rounds - 1], 0);
+            }
+            for (int k = 0; k < rounds; k++) {
+                args2[checks[k]] = size;
+                if (splits[k] != -1) {
+                    branch(splits[k], splits[k] + 1, size, node.greedy);
+                }
+            }
+        }
+
+        static boolean nullable(Node node) {
+            switch (node.type) {
+                case CHAR:
+                case SET:
+                case ANY:
+                    return false;
+                case CONCAT:
+                    for (Node child : node.children) {
+                        if (!nullable(child)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case ALTERNATION:
+                    for (Node child : node.children) {
+                        if (nullable(child)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case QUANTIFIED:
+                    return node.min == 0 || nullable(node.children[0]);
+                default:
+                    return true;
+            }
+        }
+
+        void branch(int split, int enter, int skip, boolean greedy) {
+            args[split] = greedy ? enter : skip;
+            args2[split] = greedy ? skip : enter;
+        }
+
+        int add(int op, int arg, int arg2) {
+            if (size == MAX_SIZE) {
+                throw new IllegalArgumentException("pattern is too large for the linear engine, more than "
+                        + MAX_SIZE + " instructions");
+            }
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+                args2 = Arrays.copyOf(args2, size * 2);
+                depths = Arrays.copyOf(depths, size * 2);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            args2[size] = arg2;
+            depths[size] = loops;
+            return size++;
+        }
+
+        IllegalArgumentException unsupported(String what) {
+            return new IllegalArgumentException("not supported by the linear engine: " + what + " near index " + p
+                    + " of " + regex);
+        }
+    }
+
+    /**
+     * A predicate looked up in a table for the chars up to 0xFF.
+     */
+    private static final class Latin1Table implements IntPredicate {
+
+        private final boolean[] latin1 = new boolean[256];
+        private final IntPredicate others;
+
+        Latin1Table(IntPredicate predicate) {
+            for (int c = 0; c < latin1.length; c++) {
+                latin1[c] = predicate.test(c);
+            }
+            this.others = predicate;
+        }
+
+        @Override
+        public boolean test(int c) {
+            return c < latin1.length ? latin1[c] : others.test(c);
+        }
+    }
+
+    /**
+     * A class that java.util.regex decides, with a matcher for each thread.
+     */
+    private static final class Delegated implements IntPredicate {
+
+        private final Pattern pattern;
+        private final ThreadLocal<CodePoint> codePoints = new ThreadLocal<>();
+
+        Delegated(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public boolean test(int c) {
+            CodePoint codePoint = codePoints.get();
+            if (codePoint == null) {
+                codePoint = new CodePoint(pattern);
+                codePoints.set(codePoint);
+            }
+            return codePoint.matches(c);
+        }
+    }
+
+    /**
+     * One code point as a sequence of chars that can be changed.
+     */
+    private static final class CodePoint implements CharSequence {
+
+        private final char[] chars = new char[2];
+        private int length;
+        private final Matcher matcher;
+
+        CodePoint(Pattern pattern) {
+            this.matcher = pattern.matcher(this);
+        }
+
+        boolean matches(int c) {
+            length = Character.toChars(c, chars, 0);
+            return matcher.reset().matches();
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.debuggd.text.regex;
+
+import com.debuggd.text.Text;
+import com.debuggd.text.filter.CharClass;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * The matches of a pattern in {@code input[from, to)}, each one found when it is asked for.
+ * <p>
+ * With {@code boundaries}, chars that no match contains, the input can be cut behind such a char: a match that starts
+ * before the cut ends before it too, and a scan that starts behind it finds the same matches as one from the start
+ * of the input. Each part then only looks at its own chars. The text between the parts' matches is found when it is
+ * asked for, see {@link RegexMatch}.
+ */
+final class MatchSpliterator implements Spliterator<RegexMatch> {
+
+    /**
+     * Shorter parts are not cut any further.
+     */
+    static final int MIN_SPLIT = 1 << 16;
+
+    private final Regex regex;
+    private final CharSequence input;
+    private final CharClass boundaries;
+    private int from;
+    private final int to;
+    // the end of the match before the next one, -1 if it lies in another part and has not been looked for
+    private int previousEnd;
+    private RegexMatch previous;
+    private Finder matcher;
+    private boolean done;
+
+    MatchSpliterator(Regex regex, CharSequence input, CharClass boundaries) {
+        this(regex, input, boundaries, 0, input.length(), 0);
+    }
+
+    private MatchSpliterator(Regex regex, CharSequence input, CharClass boundaries, int from, int to,
+                             int previousEnd) {
+        this.regex = regex;
+        this.input = input;
+        this.boundaries = boundaries;
+        this.from = from;
+        this.to = to;
+        this.previousEnd = previousEnd;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RegexMatch> action) {
+        if (matcher == null) {
+            // the chars around the part are seen like in a scan of the whole input
+            matcher = regex.finder(input).region(from, to);
+        } else if (done) {
+            return false;
+        }
+        // an empty match at a cut belongs to the part behind it
+        if (!matcher.find() || matcher.start() == to && to != input.length()) {
+            if (previous != null && to == input.length())
+                previous.setAfterEnd(to);
+            done = true;
+            return false;
+        }
+        if (previous != null)
+            previous.setAfterEnd(matcher.start());
+        previous = new RegexMatch(regex, input, boundaries, previousEnd, matcher.start(), matcher.end(), -1);
+        previousEnd = matcher.end();
+        action.accept(previous);
+        return true;
+    }
+
+    /**
+     * Cuts behind the first boundary char from the middle on, or before it if there is none. Only a part that has
+     * not started and has boundaries is cut.
+     */
+    @Override
+    public Spliterator<RegexMatch> trySplit() {
+        if (boundaries == null || matcher != null || to - from < 2 * MIN_SPLIT)
+            return null;
+        int middle = from + (to - from) / 2;
+        int cut = -1;
+        for (int i = middle; i < to - MIN_SPLIT && cut == -1; i++)
+            if (boundaries.contains(input.charAt(i)))
+                cut = i + 1;
+        for (int i = middle - 1; i >= from + MIN_SPLIT && cut == -1; i--)
+            if (boundaries.contains(input.charAt(i)))
+                cut = i + 1;
+        if (cut == -1)
+            return null;
+        // the parts run on other threads and read the input at the same time
+        MatchSpliterator prefix = new MatchSpliterator(regex, reader(input), boundaries, from, cut, previousEnd);
+        from = cut;
+        previousEnd = -1;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return done ? 0 : to - from;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * The start of the match behind the one in {@code [start, end)}, or the end of the input if there is none.
+     */
+    static int nextStart(Regex regex, CharSequence input, int start, int end) {
+        // like Matcher.find(), which looks one char further after an empty match
+        int from = start == end ? end + 1 : end;
+        if (from > input.length())
+            return input.length();
+        Finder matcher = regex.finder(reader(input));
+        return matcher.find(from) ? matcher.start() : input.length();
+    }
+
+    /**
+     * The end of the last match that starts before {@code start}, or 0 if there is none. The input is scanned
+     * backwards in windows that start behind a boundary char and double in length.
+     */
+    static int previousEnd(Regex regex, CharSequence input, CharClass boundaries, int start) {
+        input = reader(input);
+        Finder matcher = regex.finder(input);
+        for (long length = 1 << 8; ; length *= 2) {
+            int window = (int) Math.max(0, start - length);
+            while (window > 0 && !boundaries.contains(input.charAt(window - 1)))
+                window--;
+            int end = -1;
+            for (boolean found = matcher.find(window); found && matcher.start() < start; found = matcher.find())
+                end = matcher.end();
+            if (end != -1 || window == 0)
+                return Math.max(end, 0);
+        }
+    }
+
+    /**
+     * {@code input}, or a view of a {@link Text} whose reads keep state, so that other threads may read it too.
+     */
+    private static CharSequence reader(CharSequence input) {
+        return input instanceof Text ? ((Text) input).reader() : input;
+    }
+}
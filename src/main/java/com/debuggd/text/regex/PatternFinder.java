@@ -0,0 +1,57 @@
+package com.debuggd.text.regex;
+
+import java.util.regex.Matcher;
+
+/**
+ * {@link Regex.Engine#BACKTRACKING}: a {@link Matcher} of java.util.regex.
+ */
+final class PatternFinder extends Finder {
+
+    private final Matcher matcher;
+
+    PatternFinder(Matcher matcher) {
+        this.matcher = matcher.useTransparentBounds(true).useAnchoringBounds(false);
+    }
+
+    @Override
+    Finder reset(CharSequence input) {
+        matcher.reset(input);
+        return this;
+    }
+
+    @Override
+    Finder region(int from, int to) {
+        matcher.region(from, to);
+        return this;
+    }
+
+    @Override
+    boolean find() {
+        return matcher.find();
+    }
+
+    @Override
+    boolean find(int from) {
+        return matcher.find(from);
+    }
+
+    @Override
+    boolean matches() {
+        return matcher.matches();
+    }
+
+    @Override
+    int start() {
+        return matcher.start();
+    }
+
+    @Override
+    int end() {
+        return matcher.end();
+    }
+
+    @Override
+    boolean hitEnd() {
+        return matcher.hitEnd();
+    }
+}
@@ -1,27 +1,74 @@
 package com.debuggd.text.regex;
 
+import com.debuggd.text.filter.CharClass;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Function;
-import java.util.regex.Matcher;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Regex {
 
+    /**
+     * How the pattern is run.
+     */
+    public enum Engine {
+        /**
+         * java.util.regex, which supports all of its syntax, but may take time exponential in the length of the
+         * input for some patterns, e.g. {@code (a+)+b}.
+         */
+        BACKTRACKING,
+        /**
+         * An automaton that takes time linear in the length of the input, times the size of the pattern, whatever
+         * both are. For patterns from users. The matches are those of java.util.regex, but backreferences,
+         * lookarounds, atomic groups, possessive quantifiers, quantifiers on quantifiers, {@code \G}, {@code \R},
+         * {@code \X}, {@code \b{g}} and the flags {@code x}, {@code c} and {@code U} are not supported. Counted
+         * repetitions are unrolled, so a pattern may not grow beyond 16K instructions.
+         */
+        LINEAR
+    }
+
     private final Pattern pattern;
+    private final LinearPattern linear;
+    private final ThreadLocal<Finder> finders = new ThreadLocal<>();
 
     /**
      * @param pattern
      * @throws IllegalArgumentException If pattern is null or fails to compile
      */
     public Regex(String pattern) throws IllegalArgumentException {
+        this(pattern, Engine.BACKTRACKING);
+    }
+
+    /**
+     * @throws IllegalArgumentException If a parameter is {@code null}, or {@code pattern} fails to compile or uses
+     *                                  syntax that {@code engine} does not support.
+     */
+    public Regex(String pattern, Engine engine) throws IllegalArgumentException {
         if (pattern == null) {
             throw new IllegalArgumentException("parameter 'pattern' cannot be null");
         }
+        if (engine == null) {
+            throw new IllegalArgumentException("parameter 'engine' cannot be null");
+        }
         this.pattern = Pattern.compile(pattern);
+        this.linear = engine == Engine.LINEAR ? new LinearPattern(pattern) : null;
     }
 
     /**
+     * Runs {@code pattern} with {@link Engine#BACKTRACKING}, since its flags may be ones {@link Engine#LINEAR} does not
+     * support. For the linear engine, pass the pattern as a string with inline flags.
+     *
      * @param pattern
      * @throws IllegalArgumentException If parameter {@code pattern} is {@code null}.
      */
@@ -30,64 +77,241 @@ public class Regex {
             throw new IllegalArgumentException("parameter 'pattern' cannot be null");
         }
         this.pattern = pattern;
+        this.linear = null;
     }
 
     /**
-     * If string is <code>null</code> or is empty -1 will be returned.
-     *
-     * @param inputString
-     * @return
+     * If {@code input} is {@code null} or is empty 0 will be returned.
      */
-    public int countMatches(String inputString) {
-        if (inputString == null || inputString.isEmpty()) {
+    public int countMatches(CharSequence input) {
+        if (input == null || input.length() == 0) {
             return 0;
         }
 
-        return matchAll(inputString).size();
+        int count = 0;
+        Finder matcher = reusedFinder(input);
+        try {
+            while (matcher.find())
+                count++;
+        } finally {
+            release(matcher);
+        }
+        return count;
+    }
+
+    /**
+     * Whether the pattern matches some part of {@code input}, which is {@code false} for {@code null}.
+     */
+    public boolean find(CharSequence input) {
+        if (input == null) {
+            return false;
+        }
+        Finder matcher = reusedFinder(input);
+        try {
+            return matcher.find();
+        } finally {
+            release(matcher);
+        }
     }
 
-    public RegexMatch matchFirst(String inputString) {
-        AtomicReference<RegexMatch> reference = new AtomicReference<>();
-        matchIterator(inputString, regexMatch -> {
-            reference.set(regexMatch);
+    /**
+     * Whether the pattern matches all of {@code input}, which is {@code false} for {@code null}.
+     */
+    public boolean matches(CharSequence input) {
+        if (input == null) {
             return false;
-        });
-        return reference.get();
+        }
+        Finder matcher = reusedFinder(input);
+        try {
+            return matcher.matches();
+        } finally {
+            release(matcher);
+        }
+    }
+
+    /**
+     * The start index of the first match, or -1 if there is none or {@code input} is {@code null}.
+     */
+    public int indexOf(CharSequence input) {
+        if (input == null) {
+            return -1;
+        }
+        Finder matcher = reusedFinder(input);
+        try {
+            return matcher.find() ? matcher.start() : -1;
+        } finally {
+            release(matcher);
+        }
+    }
+
+    /**
+     * Start indices of the matches from left to right, without creating a {@link RegexMatch} for each. An input that
+     * is {@code null} has none.
+     */
+    public int[] indicesOf(CharSequence input) {
+        int[] indices = new int[8];
+        int count = 0;
+        if (input != null) {
+            Finder matcher = reusedFinder(input);
+            try {
+                while (matcher.find()) {
+                    if (count == indices.length)
+                        indices = Arrays.copyOf(indices, count * 2);
+                    indices[count++] = matcher.start();
+                }
+            } finally {
+                release(matcher);
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * Passes the start index of each match to {@code action} as it is found.
+     */
+    public void forEachIndexOf(CharSequence input, IntConsumer action) {
+        if (input == null)
+            return;
+        Finder matcher = finder(input);
+        while (matcher.find())
+            action.accept(matcher.start());
+    }
+
+    /**
+     * The first match, or {@code null} if there is none. Its text after reaches to the end of the input.
+     */
+    public RegexMatch matchFirst(CharSequence input) {
+        Finder matcher = reusedFinder(input);
+        try {
+            if (matcher.find()) {
+                return new RegexMatch(this, input, null, 0, matcher.start(), matcher.end(), input.length());
+            }
+            return null;
+        } finally {
+            release(matcher);
+        }
     }
 
-    public RegexMatches matchAll(String inputString) {
+    public RegexMatches matchAll(CharSequence input) {
         ArrayList<RegexMatch> matches = new ArrayList<>();
-        matchIterator(inputString, matches::add);
+        new MatchSpliterator(this, input, null).forEachRemaining(matches::add);
         return new RegexMatches(matches);
     }
 
-    private void matchIterator(String inputString, Function<RegexMatch, Boolean> consumer) {
-        Matcher matcher = pattern.matcher(inputString);
-        RegexMatch lastMatch = null;
-        int lastEndIndex = -1;
+    /**
+     * The matches of {@link #matchAll(CharSequence)} as a lazy stream, each one is searched for when the stream asks
+     * for it, so e.g. {@code limit(n)} or {@code anyMatch} stop the scan. An input that is {@code null} has none. The
+     * input must not change while the stream or its matches are in use.
+     * <p>
+     * The stream scans the input from left to right even if it is parallel, only the work on the matches is shared.
+     */
+    public Stream<RegexMatch> matchStream(CharSequence input) {
+        if (input == null) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(new MatchSpliterator(this, input, null), false);
+    }
 
-        while (matcher.find()) {
-            int s = matcher.start();
-            int e = matcher.end();
+    /**
+     * Like {@link #matchStream(CharSequence)}, but a parallel stream also scans parts of the input in parallel. It
+     * cuts the input behind a char of {@code boundaries}, e.g. {@link CharClass#LINE_BREAKS} for a pattern that
+     * matches within a line, which no match may contain. The result is then the same as that of a sequential scan.
+     * Parts are at least 64K chars long. Patterns with {@code \G} are not supported.
+     *
+     * @throws IllegalArgumentException If {@code boundaries} is {@code null}.
+     */
+    public Stream<RegexMatch> matchStream(CharSequence input, CharClass boundaries) throws IllegalArgumentException {
+        if (boundaries == null) {
+            throw new IllegalArgumentException("parameter 'boundaries' cannot be null");
+        }
+        if (input == null) {
+            return Stream.empty();
+        }
+        return StreamSupport.stream(new MatchSpliterator(this, input, boundaries), false);
+    }
+
+    /**
+     * The matches of {@link #matchStream(CharSequence)} one after the other.
+     */
+    public Iterator<RegexMatch> matchIterator(CharSequence input) {
+        if (input == null) {
+            return Collections.emptyIterator();
+        }
+        return Spliterators.iterator(new MatchSpliterator(this, input, null));
+    }
 
-            RegexMatch regexMatch = new RegexMatch();
+    /**
+     * Scans {@code in} for matches with a window of {@code 2 * maxMatchLength} chars plus 64K, so the memory needed
+     * does not depend on the length of the input, and passes each match to {@code handler} with its offsets in the
+     * input. Neither a match nor what the pattern looks at around it, lookarounds included, may reach further than
+     * {@code maxMatchLength} chars. The matches are then the same as those of {@link #matchAll(CharSequence)} over
+     * the whole input. The reader is not closed.
+     *
+     * @return the number of matches passed to {@code handler}
+     * @throws IllegalArgumentException If {@code in} or {@code handler} is {@code null}, or {@code maxMatchLength} is
+     *                                  not between 1 and 2^28.
+     */
+    public long scan(Reader in, int maxMatchLength, MatchHandler handler) throws IOException, IllegalArgumentException {
+        if (in == null) {
+            throw new IllegalArgumentException("parameter 'in' cannot be null");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("parameter 'handler' cannot be null");
+        }
+        if (maxMatchLength < 1 || maxMatchLength > WindowScanner.MAX_MATCH_LENGTH) {
+            throw new IllegalArgumentException("parameter 'maxMatchLength' must be between 1 and "
+                    + WindowScanner.MAX_MATCH_LENGTH);
+        }
+        return WindowScanner.scan(this, in, maxMatchLength, handler);
+    }
 
-            regexMatch.setAfter(inputString.substring(e, inputString.length()));
-            regexMatch.setMatch(inputString.substring(s, e));
+    /**
+     * Like {@link #scan(Reader, int, MatchHandler)} over the chars decoded from {@code in}, the offsets count chars,
+     * not bytes.
+     */
+    public long scan(ReadableByteChannel in, Charset charset, int maxMatchLength, MatchHandler handler)
+            throws IOException, IllegalArgumentException {
+        if (in == null) {
+            throw new IllegalArgumentException("parameter 'in' cannot be null");
+        }
+        return scan(Channels.newReader(in, charset.newDecoder(), WindowScanner.BUFFER_SIZE), maxMatchLength, handler);
+    }
 
-            if (lastMatch != null) {
-                lastMatch.setAfter(inputString.substring(lastEndIndex, s));
-                regexMatch.setBefore(lastMatch.getAfter());
-            } else {
-                regexMatch.setBefore(inputString.substring(0, s));
-            }
+    @FunctionalInterface
+    public interface MatchHandler {
+        /**
+         * @param match the matched chars, only valid during the call
+         * @return whether to go on, {@code false} stops the scan
+         */
+        boolean handle(long start, long end, CharSequence match) throws IOException;
+    }
 
-            if (!consumer.apply(regexMatch)) {
-                break;
-            }
+    /**
+     * A new finder of the engine over {@code input}.
+     */
+    Finder finder(CharSequence input) {
+        return linear != null ? new LinearFinder(linear).reset(input) : new PatternFinder(pattern.matcher(input));
+    }
 
-            lastMatch = regexMatch;
-            lastEndIndex = e;
+    /**
+     * The finder of this thread, reset to {@code input}, so that a search allocates nothing. Only for methods that
+     * run no code of the caller while they use it, since that might use this regex too.
+     */
+    private Finder reusedFinder(CharSequence input) {
+        Finder finder = finders.get();
+        if (finder == null) {
+            finder = finder(input);
+            finders.set(finder);
+            return finder;
         }
+        return finder.reset(input);
+    }
+
+    /**
+     * Lets go of the input, which may be large. Called in a {@code finally}, so that a search that fails does not
+     * leave the input to the thread.
+     */
+    private static void release(Finder finder) {
+        finder.reset("");
     }
-}
\ No newline at end of file
+}
@@ -1,32 +1,103 @@
 package com.debuggd.text.regex;
 
+import com.debuggd.text.filter.CharClass;
+
+import java.nio.CharBuffer;
+
+/**
+ * A match and the text around it, kept as offsets into the input. The strings are only cut out when they are asked
+ * for, so a match holds on to the whole input as long as it is referenced.
+ * <p>
+ * A match from a {@link Regex#matchStream(CharSequence) stream} may not know yet where the match before or after it
+ * is, those are looked for when the text before or after it is asked for.
+ */
 public class RegexMatch {
 
-	private String before = "";
-	private String after = "";
-	private String match = "";
+	private final Regex regex;
+	private final CharSequence input;
+	private final CharClass boundaries;
+	private int beforeStart;
+	private final int start;
+	private final int end;
+	private int afterEnd;
 
-	public String getBefore() {
-		return before;
+	/**
+	 * @param beforeStart the end of the previous match, 0 for the first, -1 if not known yet
+	 * @param afterEnd    the start of the next match, the end of the input for the last, -1 if not known yet
+	 */
+	RegexMatch(Regex regex, CharSequence input, CharClass boundaries, int beforeStart, int start, int end,
+			   int afterEnd) {
+		this.regex = regex;
+		this.input = input;
+		this.boundaries = boundaries;
+		this.beforeStart = beforeStart;
+		this.start = start;
+		this.end = end;
+		this.afterEnd = afterEnd;
 	}
 
-	void setBefore(String before) {
-		this.before = before;
+	public String getBefore() {
+		return input.subSequence(beforeStart(), start).toString();
 	}
 
 	public String getAfter() {
-		return after;
+		return input.subSequence(end, afterEnd()).toString();
 	}
 
-	void setAfter(String after) {
-		this.after = after;
+	void setAfterEnd(int afterEnd) {
+		this.afterEnd = afterEnd;
 	}
 
 	public String getMatch() {
-		return match;
+		return input.subSequence(start, end).toString();
+	}
+
+	/**
+	 * {@link #getBefore()} as a view of the input, which copies nothing.
+	 */
+	public CharSequence before() {
+		return CharBuffer.wrap(input, beforeStart(), start);
+	}
+
+	/**
+	 * {@link #getAfter()} as a view of the input, which copies nothing.
+	 */
+	public CharSequence after() {
+		return CharBuffer.wrap(input, end, afterEnd());
+	}
+
+	/**
+	 * {@link #getMatch()} as a view of the input, which copies nothing.
+	 */
+	public CharSequence match() {
+		return CharBuffer.wrap(input, start, end);
+	}
+
+	/**
+	 * The index of the first char of the match in the input.
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * The index behind the last char of the match in the input.
+	 */
+	public int end() {
+		return end;
+	}
+
+	private int beforeStart() {
+		if (beforeStart == -1) {
+			beforeStart = MatchSpliterator.previousEnd(regex, input, boundaries, start);
+		}
+		return beforeStart;
 	}
 
-	void setMatch(String match) {
-		this.match = match;
+	private int afterEnd() {
+		if (afterEnd == -1) {
+			afterEnd = MatchSpliterator.nextStart(regex, input, start, end);
+		}
+		return afterEnd;
 	}
-}
\ No newline at end of file
+}
@@ -10,15 +10,6 @@ public class RegexMatches implements Iterable<RegexMatch> {
 
 	RegexMatches(ArrayList<RegexMatch> regexMatches) {
 		this.regexMatches = regexMatches;
-		this.misMatches = new ArrayList<>();
-		RegexMatch last = null;
-		for (RegexMatch match : regexMatches) {
-			misMatches.add(match.getBefore());
-			last = match;
-		}
-		if (last != null && last.getAfter() != null) {
-			misMatches.add(last.getAfter());
-		}
 	}
 
 	public boolean hasMatches() {
@@ -38,7 +29,19 @@ public class RegexMatches implements Iterable<RegexMatch> {
 		return regexMatches.get(index);
 	}
 
+	/**
+	 * The text before each match and the text after the last one. The list is built by the first call.
+	 */
 	public List<String> getMisMatches() {
+		if (misMatches == null) {
+			misMatches = new ArrayList<>(regexMatches.size() + 1);
+			for (RegexMatch match : regexMatches) {
+				misMatches.add(match.getBefore());
+			}
+			if (!regexMatches.isEmpty()) {
+				misMatches.add(regexMatches.get(regexMatches.size() - 1).getAfter());
+			}
+		}
 		return misMatches;
 	}
 }
@@ -0,0 +1,61 @@
+package com.debuggd.text.regex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * {@link Regex#scan(Reader, int, Regex.MatchHandler)}: the input is read into a window that slides over it. A search
+ * that touches the end of the window ({@link Finder#hitEnd()}) might turn out differently with the chars that follow,
+ * so it is repeated once they have been read. Since neither a match nor what the pattern looks at around it reaches
+ * more than {@code maxMatchLength} chars, the window only has to keep that many chars of an undecided search, and as
+ * many before them for lookbehinds and word boundaries.
+ */
+final class WindowScanner {
+
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int MAX_MATCH_LENGTH = 1 << 28;
+
+    private WindowScanner() {
+    }
+
+    static long scan(Regex regex, Reader in, int maxMatchLength, Regex.MatchHandler handler) throws IOException {
+        char[] chars = new char[BUFFER_SIZE + 2 * maxMatchLength];
+        int length = 0;
+        // the offset of chars[0] in the input, and where the next search starts in the window
+        long base = 0;
+        int from = 0;
+        long count = 0;
+        Finder matcher = regex.finder("");
+        while (true) {
+            int read = in.read(chars, length, chars.length - length);
+            boolean end = read == -1;
+            if (!end)
+                length += read;
+            CharBuffer window = CharBuffer.wrap(chars, 0, length);
+            matcher.reset(window);
+            if (from > length)
+                return count;
+            matcher.region(from, length);
+            while (matcher.find() && (end || !matcher.hitEnd())) {
+                count++;
+                if (!handler.handle(base + matcher.start(), base + matcher.end(),
+                        window.subSequence(matcher.start(), matcher.end())))
+                    return count;
+                // the next search starts behind the match, or one char further behind an empty one
+                from = matcher.end() + (matcher.start() == matcher.end() ? 1 : 0);
+            }
+            if (end)
+                return count;
+
+            // searches that start before keep have ended without touching the end of the window
+            int keep = matcher.hitEnd() ? Math.max(from, length - maxMatchLength) : length;
+            from = Math.max(from, keep);
+            int context = Math.max(0, keep - maxMatchLength);
+            System.arraycopy(chars, context, chars, 0, length - context);
+            base += context;
+            length -= context;
+            from -= context;
+        }
+    }
+}
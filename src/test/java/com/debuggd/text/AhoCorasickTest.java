@@ -0,0 +1,83 @@
+package com.debuggd.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AhoCorasickTest {
+
+    private static AhoCorasick literals(boolean ignoreCase, String... literals) {
+        return new AhoCorasick(new LinkedHashSet<>(Arrays.asList(literals)), ignoreCase);
+    }
+
+    @Test
+    public void invalidLiterals() {
+        assertThrows(IllegalArgumentException.class, () -> new AhoCorasick((Map<String, String>) null));
+        assertThrows(IllegalArgumentException.class, () -> literals(false, "a", ""));
+        // ein Literal, das ein anderes verdeckt, würde nie gezählt oder ersetzt
+        assertThrows(IllegalArgumentException.class, () -> literals(true, "Foo", "foo"));
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("Foo", "a");
+        replacements.put("fOO", "b");
+        assertThrows(IllegalArgumentException.class, () -> new AhoCorasick(replacements, true));
+        assertEquals(2, literals(false, "Foo", "foo").size());
+    }
+
+    @Test
+    public void containsAny() {
+        AhoCorasick ac = literals(false, "he", "she", "hers");
+        assertTrue(ac.containsAny("ushers"));
+        assertTrue(ac.containsAny(new Text("a hero")));
+        assertFalse(ac.containsAny("HERS"));
+        assertFalse(ac.containsAny(""));
+        assertFalse(ac.containsAny(null));
+        assertTrue(literals(true, "he", "she").containsAny("SHE"));
+    }
+
+    @Test
+    public void indicesOfAll() {
+        AhoCorasick ac = literals(false, "he", "she", "his", "hers");
+        AhoCorasick.Hits hits = ac.indicesOfAll("ushers");
+        assertEquals(3, hits.size());
+        assertArrayEquals(new int[]{1, 2, 2}, hits.offsets());
+        assertArrayEquals(new int[]{1, 0, 3}, hits.patternIds());
+        assertEquals("hers", ac.pattern(hits.patternId(2)));
+        assertTrue(ac.indicesOfAll("xyz").isEmpty());
+    }
+
+    @Test
+    public void countAll() {
+        AhoCorasick ac = literals(false, "t", "te", "text", "tt");
+        Text text = new Text("text to test tt");
+        assertEquals(text.count("t") + text.count("te") + text.count("text") + text.count("tt"), ac.countAll(text));
+        assertArrayEquals(new int[]{text.count("t"), text.count("te"), text.count("text"), text.count("tt")},
+                ac.countEach(text));
+        assertEquals(2, literals(true, "ab").countAll("AB ab"));
+    }
+
+    @Test
+    public void replaceAll() {
+        Map<String, String> replacements = new LinkedHashMap<>();
+        replacements.put("bc", "1");
+        replacements.put("abcd", "2");
+        replacements.put("d", "3");
+        replacements.put("x", null);
+        AhoCorasick ac = new AhoCorasick(replacements);
+        assertEquals("2", ac.replaceAll("abcd"));
+        assertEquals("a13", ac.replaceAll("abcxd"));
+        assertEquals("22a1", ac.replaceAll("abcdabcdabc"));
+        assertEquals("no hits", ac.replaceAll("no hits"));
+        assertEquals("2-1-3", ac.replaceAll(new Text("abcd-bc-d")).toString());
+
+        AhoCorasick single = literals(false, "ttt");
+        assertEquals(new Text("tttt").replaceAll("ttt", "d").toString(), single.replaceAll("tttt", "d"));
+        assertEquals("t", single.replaceAll(new Text("tttt"), null).toString());
+        assertEquals("*** and ***", literals(true, "secret").replaceAll("SeCrEt and secret", "***"));
+        assertThrows(IllegalStateException.class, () -> single.replaceAll("tttt"));
+    }
+}
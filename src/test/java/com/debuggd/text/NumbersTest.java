@@ -0,0 +1,66 @@
+package com.debuggd.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumbersTest {
+
+    @Test
+    public void parseLong() {
+        Text text = new Text("id=-9223372036854775808;");
+        assertEquals(Long.MIN_VALUE, Numbers.parseLong(text, 3, 23));
+        assertEquals(42, Numbers.parseLong("+42"));
+        assertEquals(42, Numbers.parseInt("x42x", 1, 3));
+        assertEquals(123, Numbers.parseInt("١٢٣"));
+        assertEquals(Long.parseLong("-0"), Numbers.parseLong("-0"));
+        for (String invalid : new String[]{"", "-", "+", "1a", "9223372036854775808", " 1", "1.0"})
+            assertThrows(NumberFormatException.class, () -> Numbers.parseLong(invalid));
+        assertThrows(NumberFormatException.class, () -> Numbers.parseInt("2147483648"));
+        assertThrows(IllegalArgumentException.class, () -> Numbers.parseLong(null));
+        assertThrows(StringIndexOutOfBoundsException.class, () -> Numbers.parseLong("12", 1, 3));
+    }
+
+    @Test
+    public void parseDouble() {
+        String[] numbers = {"0", "-0", "1", "-12.5", ".5", "3.", "1e10", "1.5E-3", "-2e+2", "0.1", "0.3",
+                "123456789012345678901234567890", "9007199254740993", "1e23", "4.9e-324", "1e-400", "1e400",
+                "0.000000000000000000000000000001", "3.141592653589793238462643383279", "179769313486231570e291"};
+        for (String number : numbers)
+            assertEquals(Double.parseDouble(number), Numbers.parseDouble(number), number);
+
+        // zufällige Zahlen, kurze laufen über den schnellen Weg, lange über Double.parseDouble
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            String number = random.nextBoolean() ? Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20))
+                    : random.nextInt(1_000_000) + "." + random.nextInt(1000);
+            assertEquals(Double.parseDouble(number), Numbers.parseDouble(number), number);
+        }
+        assertEquals(1.5, Numbers.parseDouble("١.5"));
+        for (String invalid : new String[]{"", ".", "-", "e5", "1e", "1e+", "1.2.3", "1x", "NaN", " 1"})
+            assertThrows(NumberFormatException.class, () -> Numbers.parseDouble(invalid));
+    }
+
+    @Test
+    public void extract() {
+        NumberExtractor numbers = new NumberExtractor();
+        numbers.extract("2024-05-01 GET /api/v2 took -3 ms, 1.5e3 bytes, ratio 0.25 of 99999999999999999999");
+        assertArrayEquals(new double[]{2024, 5, 1, 2, -3, 1500, 0.25, 1e20}, numbers.doubles());
+        assertArrayEquals(new long[]{2024, 5, 1, 2, -3}, numbers.longs());
+        assertFalse(numbers.isIntegral(5));
+        assertEquals(1500, numbers.longValue(5));
+        assertEquals("1.5e3", "2024-05-01 GET /api/v2 took -3 ms, 1.5e3 bytes".substring(numbers.start(5), numbers.end(5)));
+
+        // Punkt und Exponent gehören nur dazu, wenn Ziffern folgen
+        numbers.extract(new Text("v1. 2e x-4 -5-6"));
+        assertArrayEquals(new double[]{1, 2, 4, -5, 6}, numbers.doubles());
+
+        numbers.extract("keine Zahl", 0, 5);
+        assertTrue(numbers.isEmpty());
+        assertThrows(IndexOutOfBoundsException.class, () -> numbers.start(0));
+        assertTrue(Text.isNumber("-12.5"));
+        assertFalse(Text.isNumber("1.2.3"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.debuggd.text;
+
+import com.debuggd.text.filter.CharClass;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelTextTest {
+
+    @Test
+    public void sameAsSequential() {
+        // kleine Texte in vielen Stücken, damit Treffer und Leerzeichenfolgen oft über eine Grenze gehen
+        Random random = new Random(11);
+        String[] alphabets = {"ab  \n", "aab \t ", "aÿb € "};
+        for (int round = 0; round < 300; round++) {
+            String alphabet = alphabets[round % alphabets.length];
+            char[] chars = new char[random.nextInt(200)];
+            for (int i = 0; i < chars.length; i++)
+                chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+            String content = new String(chars);
+            int chunks = 1 + random.nextInt(Math.max(1, Math.min(chars.length, 40)));
+            for (TextStorage storage : new TextStorage[]{Latin1Storage.of(content),
+                    new BuilderStorage(new StringBuilder(content)), Latin1Storage.of(content).toRope()}) {
+                for (String needle : new String[]{"a", "ab", "aa", " a", "aab", "ÿ€"}) {
+                    Text text = new Text(content);
+                    assertEquals(text.count(needle), ParallelText.count(storage, needle, chunks), needle);
+                    assertArrayEquals(text.indexArrayOf(needle), ParallelText.indicesOf(storage, needle, chunks));
+                }
+                assertTransformed(content, storage, chunks, Text::toLowerCase, EditableStorage::toLowerCase, false);
+                assertTransformed(content, storage, chunks, Text::toUpperCase, EditableStorage::toUpperCase, false);
+                assertTransformed(content, storage, chunks, Text::normalizeWhiteSpaces,
+                        EditableStorage::normalizeWhiteSpaces, true);
+                assertTransformed(content, storage, chunks, Text::toSingleLine, chunk -> {
+                    chunk.filter(Text.SINGLE_LINE);
+                    return chunk;
+                }, false);
+            }
+        }
+    }
+
+    private static void assertTransformed(String content, TextStorage storage, int chunks,
+                                          UnaryOperator<Text> sequential, UnaryOperator<EditableStorage> operation,
+                                          boolean collapseSpaces) {
+        String expected = sequential.apply(new Text(content)).toString();
+        TextStorage result = ParallelText.transform(storage, operation, collapseSpaces, chunks);
+        assertEquals(expected, result.substring(0, result.length()), content);
+        // die Stücke sind Kopien, das Original bleibt unverändert
+        assertEquals(content, storage.substring(0, storage.length()));
+    }
+
+    @Test
+    public void parallelTexts() {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(5);
+        while (sb.length() < 3 * ParallelText.THRESHOLD)
+            sb.append("Zeile ").append(random.nextInt(1000)).append(random.nextBoolean() ? "  \t" : "\r\n");
+        String content = sb.toString();
+        Text parallel = new Text(content).parallel();
+        Text sequential = new Text(content);
+        assertTrue(parallel.isParallel());
+        assertFalse(new Text(parallel).isParallel());
+
+        assertEquals(sequential.count("e 1"), parallel.count("e 1"));
+        assertEquals(sequential.indicesOf("  "), parallel.indicesOf("  "));
+        assertEquals(sequential.toUpperCase().toString(), parallel.toUpperCase().toString());
+        assertEquals(sequential.filter(CharClass.DIGITS.negate()).toString(),
+                parallel.filter(CharClass.DIGITS.negate()).toString());
+        assertEquals(sequential.normalizeWhiteSpaces().toString(), parallel.normalizeWhiteSpaces().toString());
+        assertEquals(sequential.toSingleLine().toLowerCase().toString(),
+                parallel.toSingleLine().toLowerCase().toString());
+        assertEquals(sequential.length(), parallel.sequential().length());
+    }
+}
@@ -1,5 +1,6 @@
 package com.debuggd.text;
 
+import com.debuggd.text.filter.CharClass;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -7,6 +8,21 @@ import com.debuggd.text.regex.Regex;
 import com.debuggd.text.regex.RegexMatch;
 import com.debuggd.text.regex.RegexMatches;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
 class RegexTest {
 
     @Test
@@ -53,4 +69,199 @@ class RegexTest {
         Assertions.assertEquals("", m_6.getAfter(), "m_6: getAfter()");
         Assertions.assertEquals("i", m_6.getMatch(), "m_6: getMatch()");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void indicesTest() {
+        Regex regex = new Regex("[ai]");
+        String string = "adas ist ein matchAllTesti";
+        Assertions.assertArrayEquals(new int[]{0, 2, 5, 10, 14, 25}, regex.indicesOf(string));
+        Assertions.assertArrayEquals(new int[]{}, regex.indicesOf(null));
+        StringBuilder starts = new StringBuilder();
+        regex.forEachIndexOf(new StringBuilder(string), i -> starts.append(i).append(' '));
+        Assertions.assertEquals("0 2 5 10 14 25 ", starts.toString());
+        Assertions.assertEquals(regex.matchAll(string).size(), regex.indicesOf(string).length);
+        Assertions.assertEquals(0, regex.countMatches(null));
+    }
+
+    @Test
+    public void lazyMatches() {
+        String string = "adas ist ein matchAllTesti";
+        RegexMatches matches = new Regex("[ai]").matchAll(string);
+        RegexMatch match = matches.getMatch(4);
+        Assertions.assertEquals(14, match.start());
+        Assertions.assertEquals(15, match.end());
+        Assertions.assertEquals("a", match.match().toString());
+        Assertions.assertEquals("n m", match.before().toString());
+        Assertions.assertEquals("tchAllTest", match.after().toString());
+        Assertions.assertEquals(java.util.Arrays.asList("", "d", "s ", "st e", "n m", "tchAllTest", ""),
+                matches.getMisMatches());
+        Assertions.assertSame(matches.getMisMatches(), matches.getMisMatches());
+        Assertions.assertTrue(new Regex("x").matchAll(string).getMisMatches().isEmpty());
+
+        // ohne weitere Treffer reicht der Rest bis zum Ende
+        RegexMatch first = new Regex("ist").matchFirst(string);
+        Assertions.assertEquals(" ein matchAllTesti", first.getAfter());
+        Assertions.assertEquals("adas ", first.getBefore());
+    }
+
+    @Test
+    public void fastPaths() {
+        Regex regex = new Regex("\\d+");
+        Text text = new Text("Fehler 404 nach 3 Versuchen");
+        Assertions.assertEquals(2, regex.countMatches(text));
+        Assertions.assertTrue(regex.find(text));
+        Assertions.assertFalse(regex.matches(text));
+        Assertions.assertTrue(regex.matches("2024"));
+        Assertions.assertEquals(7, regex.indexOf(text));
+        Assertions.assertEquals(-1, regex.indexOf("keine Zahl"));
+        Assertions.assertEquals("404", regex.matchFirst(text).getMatch());
+        Assertions.assertNull(regex.matchFirst("keine Zahl"));
+        Assertions.assertFalse(regex.find(null));
+        Assertions.assertFalse(regex.matches(null));
+        Assertions.assertEquals(-1, regex.indexOf(null));
+
+        // jeder Thread hat seinen Matcher, und der wird ohne Allokation wiederverwendet
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        String line = "2024-05-01 12:00:00 user=42 took 17 ms";
+        int hits = 0;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < 10_000; i++) {
+                hits += regex.countMatches(line);
+                if (regex.find(line))
+                    hits++;
+                hits += regex.indexOf(line);
+            }
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            Assertions.assertTrue(round == 0 || allocated < 10_000, allocated + " bytes");
+        }
+        Assertions.assertEquals(3 * 10_000 * 9, hits);
+    }
+
+    @Test
+    public void matchStreams() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(8);
+        while (sb.length() < 600_000)
+            sb.append("Zeile ").append(random.nextInt(100)).append(random.nextBoolean() ? " ab xx b" : "").append('\n');
+        Text text = new Text(sb.toString());
+        for (String pattern : new String[]{"\\d+", "x*", "(?<=a)b\\w*", "(?m)^\\w+", "b$", "Zeile"}) {
+            Regex regex = new Regex(pattern);
+            List<String> expected = describe(regex.matchAll(text).iterator());
+            List<String> parallel = regex.matchStream(text, CharClass.LINE_BREAKS).parallel()
+                    .map(RegexTest::describe).collect(Collectors.toList());
+            Assertions.assertEquals(expected, parallel, pattern);
+            Assertions.assertEquals(expected, describe(regex.matchIterator(text)), pattern);
+            Assertions.assertEquals(expected.subList(0, Math.min(3, expected.size())), regex.matchStream(text).limit(3)
+                    .map(RegexTest::describe).collect(Collectors.toList()), pattern);
+        }
+        // eine Rope liest mit einem Cursor, jeder Teil braucht seinen eigenen, auch mit nur einem Kern
+        Text rope = new Text(text).withRopeStorage();
+        Regex digits = new Regex("\\d+ ab");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<String> parallel = pool.submit(() -> digits.matchStream(rope, CharClass.LINE_BREAKS).parallel()
+                    .map(RegexTest::describe).collect(Collectors.toList())).get();
+            Assertions.assertEquals(describe(digits.matchAll(text).iterator()), parallel);
+        } finally {
+            pool.shutdown();
+        }
+
+        Spliterator<RegexMatch> spliterator = new Regex("\\d+").matchStream(text, CharClass.LINE_BREAKS).spliterator();
+        Assertions.assertNotNull(spliterator.trySplit());
+        Assertions.assertNull(new Regex("\\d+").matchStream(text).spliterator().trySplit());
+
+        // der Stream sucht nur so weit, wie er gefragt wird
+        Assertions.assertEquals("Zeile", new Regex("\\w+").matchStream(text).findFirst().get().getMatch());
+        Assertions.assertEquals(0, new Regex("x").matchStream(null).count());
+        Assertions.assertFalse(new Regex("x").matchIterator(null).hasNext());
+    }
+
+    private static List<String> describe(Iterator<RegexMatch> matches) {
+        List<String> described = new ArrayList<>();
+        matches.forEachRemaining(match -> described.add(describe(match)));
+        return described;
+    }
+
+    private static String describe(RegexMatch match) {
+        return match.start() + "-" + match.end() + ":" + match.getBefore().length() + "/" + match.getAfter().length()
+                + "/" + match.before() + "|" + match.match() + "|" + match.after().length();
+    }
+
+    @Test
+    public void scanReaders() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(4);
+        while (sb.length() < 300_000)
+            sb.append(random.nextBoolean() ? "ab " : "").append(random.nextInt(100_000)).append(random.nextBoolean() ? '\n' : 'b');
+        String content = sb.toString();
+        for (String pattern : new String[]{"\\d+", "x*", "(?m)^ab", "b$", "\\bab\\b", "(?<=a)b", "\\d+(?=\\n)", "",
+                "\\d{3}b\\z"}) {
+            Regex regex = new Regex(pattern);
+            List<String> expected = new ArrayList<>();
+            for (RegexMatch match : regex.matchAll(content))
+                expected.add(match.start() + "-" + match.end() + ":" + match.getMatch());
+            // kleine und ungleich große Happen, damit Treffer oft über das Ende des Fensters gehen
+            Reader reader = new StringReader(content) {
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    return super.read(cbuf, off, Math.min(len, 1 + random.nextInt(200)));
+                }
+            };
+            List<String> scanned = new ArrayList<>();
+            long count = regex.scan(reader, 16, (start, end, match) ->
+                    scanned.add(start + "-" + end + ":" + match));
+            Assertions.assertEquals(expected, scanned, pattern);
+            Assertions.assertEquals(expected.size(), count);
+        }
+
+        // eine Datei, die nicht in den Speicher passen müsste, und ein vorzeitiges Ende
+        Path file = Files.createTempFile("scan", ".txt");
+        try {
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+            List<Long> starts = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(file)) {
+                Assertions.assertEquals(3, new Regex("\\d+").scan(channel, StandardCharsets.UTF_8, 16,
+                        (start, end, match) -> starts.add(start) && starts.size() < 3));
+            }
+            Assertions.assertEquals(new Regex("\\d+").indicesOf(content)[2], (long) starts.get(2));
+        } finally {
+            Files.delete(file);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Regex("x").scan(new StringReader("x"), 0, (start, end, match) -> true));
+    }
+
+    @Test
+    public void linearEngine() {
+        String text = "Ab 12 ab_c\r\nÄb  x1 \uD83D\uDE00b\naab\n\n(c)\u0301ab";
+        for (String pattern : new String[]{"", "a", "\\w+", "(?i)ab?", "[a-c&&[^b]]+", "\\p{L}+?", "(a|ab)(c|bcd)?",
+                "(?:a*|b)*", "(a*)+$", "x??\\b", "(?m)^\\w*$", "\\Bb|\\d{1,2}", "(?s).{2,3}?\\z", "\\Q(c)\\E\\W",
+                "(?:b|)*?_", "(?u)ä", "\\S+\\Z", "[^a]"}) {
+            Regex regex = new Regex(pattern, Regex.Engine.LINEAR);
+            Regex expected = new Regex(pattern);
+            Assertions.assertEquals(describe(expected.matchAll(text).iterator()),
+                    describe(regex.matchAll(text).iterator()), pattern);
+            Assertions.assertEquals(expected.countMatches(text), regex.countMatches(text), pattern);
+            Assertions.assertEquals(expected.matches("aab"), regex.matches("aab"), pattern);
+        }
+        Assertions.assertEquals("ab", new Regex("a.", Regex.Engine.LINEAR).matchFirst("xab").getMatch());
+
+        // was Zurückverfolgen braucht, wird abgelehnt
+        for (String pattern : new String[]{"(a)\\1", "a(?=b)", "(?<!a)b", "(?>a)", "a*+", "\\G", "(?x)a", "a{2}{3}",
+                "(", "a{100000}"})
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new Regex(pattern, Regex.Engine.LINEAR));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Regex(null, Regex.Engine.LINEAR));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Regex("a", null));
+
+        // exponentiell für java.util.regex
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++)
+            sb.append('a');
+        Regex regex = new Regex("(a+)+b", Regex.Engine.LINEAR);
+        Assertions.assertEquals(0, regex.countMatches(sb));
+        Assertions.assertNull(regex.matchFirst(sb));
+        Assertions.assertEquals(1, new Regex("(a|aa)+$", Regex.Engine.LINEAR).countMatches(sb));
+    }
+}
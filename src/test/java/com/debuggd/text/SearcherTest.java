@@ -0,0 +1,72 @@
+package com.debuggd.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearcherTest {
+
+    @Test
+    public void invalidNeedles() {
+        assertThrows(IllegalArgumentException.class, () -> new Searcher(null));
+        assertThrows(IllegalArgumentException.class, () -> Text.searcher(""));
+    }
+
+    @Test
+    public void sameAsIndexOf() {
+        // kurze, lange und periodische Nadeln, damit jeder Algorithmus drankommt
+        String[] needles = {"a", "ab", "aab", "abcd", "abcabd", "aaab", "aaaaaaaab", "abaabaab", "bbbbbbbb", "acgtacgg",
+                "ĀbȀc"};
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            char[] chars = new char[random.nextInt(3000)];
+            for (int i = 0; i < chars.length; i++)
+                chars[i] = round % 10 == 0 ? "ĀbȀc".charAt(random.nextInt(4)) : "abcgt".charAt(random.nextInt(round % 4 + 2));
+            String haystack = new String(chars);
+            for (String needle : needles) {
+                Searcher searcher = new Searcher(needle);
+                for (int from = 0, expected; ; from = expected + 1) {
+                    expected = haystack.indexOf(needle, from);
+                    assertEquals(expected, searcher.indexOf(haystack, from), needle + " from " + from);
+                    assertEquals(expected, searcher.indexOf(new StringBuilder(haystack), from), needle);
+                    if (expected == -1)
+                        break;
+                }
+                Text text = new Text(haystack);
+                assertEquals(text.count(needle), searcher.count(haystack));
+                assertEquals(text.count(needle), searcher.count(text));
+                assertArrayEquals(text.indicesOf(needle).stream().mapToInt(Integer::intValue).toArray(),
+                        searcher.indicesOf(text));
+            }
+        }
+    }
+
+    @Test
+    public void ranges() {
+        Searcher searcher = Text.searcher("abab");
+        assertEquals(-1, searcher.indexOf("xababx", 0, 4));
+        assertEquals(1, searcher.indexOf("xababx", 0, 5));
+        assertEquals(-1, searcher.indexOf("xababx", 2));
+        assertEquals(-1, searcher.indexOf(null));
+        assertArrayEquals(new int[]{0, 4}, searcher.indicesOf("ababababa"));
+        assertEquals(3, searcher.count("ababababa"));
+    }
+
+    @Test
+    public void texts() {
+        Searcher searcher = Text.searcher("Köln");
+        Text text = new Text("Grüße aus Köln, Köln");
+        assertEquals(10, searcher.indexOf(text));
+        assertTrue(searcher.contains(text));
+        assertArrayEquals(new int[]{10, 16}, searcher.indicesOf(text));
+
+        // nach dem Kürzen sucht der Searcher nur noch im Fenster
+        text.deleteLast("Köln").trimRight();
+        assertEquals(1, searcher.count(text));
+        text.deleteAll("Köln");
+        assertFalse(searcher.contains(text));
+        assertEquals(-1, searcher.indexOf(text));
+    }
+}
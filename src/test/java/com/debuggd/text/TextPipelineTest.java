@@ -0,0 +1,63 @@
+package com.debuggd.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextPipelineTest {
+
+    private static final TextPipeline NORMALIZE = TextPipeline.builder()
+            .trim().toSingleLine().normalizeWhiteSpaces().toLowerCase().deleteNonAlphaNumeric(true)
+            .build();
+    private static final TextPipeline LOWER_CASE_WORDS = TextPipeline.builder()
+            .trim().normalizeWhiteSpaces().toLowerCase()
+            .build();
+
+    @Test
+    public void sameAsChainedCalls() {
+        String[] inputs = {"", "   ", "  Hello,\n\tWorld!  ", "A  B C ", "\r\nx\r\n", "ÄÖÜ  ß 12"};
+        for (String input : inputs) {
+            String expected = new Text(input)
+                    .trim().toSingleLine().normalizeWhiteSpaces().toLowerCase().deleteNonAlphaNumeric(true)
+                    .toString();
+            assertEquals(expected, NORMALIZE.apply(input));
+            assertEquals(expected, NORMALIZE.apply(new StringBuilder(input)));
+            assertEquals(expected, NORMALIZE.apply(new Text(input)).toString());
+        }
+    }
+
+    @Test
+    public void trimming() {
+        assertEquals("a  b", TextPipeline.builder().trim().build().apply("  a  b \t"));
+        assertEquals("a  b \t", TextPipeline.builder().trimLeft().build().apply("  a  b \t"));
+        assertEquals("  a  b", TextPipeline.builder().trimRight().build().apply("  a  b \t"));
+        // die Leerzeichen am Ende werden erst nach dem Großschreiben entfernt
+        assertEquals("A B", TextPipeline.builder().toUpperCase().normalizeWhiteSpaces().trim().build().apply(" a\n\nb "));
+        assertEquals("", TextPipeline.builder().trim().build().apply(" \t "));
+    }
+
+    @Test
+    public void filters() {
+        TextPipeline pipeline = TextPipeline.builder().filter(c -> c != '-').deleteDigits().trimRight().build();
+        assertEquals("abc", pipeline.apply("a-1b-2c -3"));
+        assertEquals("a-b", TextPipeline.builder().filter(null).build().apply("a-b"));
+    }
+
+    @Test
+    public void charArrays() {
+        char[] chars = "xx  A  B  yy".toCharArray();
+        int end = LOWER_CASE_WORDS.apply(chars, 2, 10);
+        assertEquals("xxa byy", new String(chars, 0, end) + new String(chars, 10, 2));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> LOWER_CASE_WORDS.apply(chars, 5, 13));
+    }
+
+    @Test
+    public void textIsEditedInPlace() {
+        Text text = new Text("  Eins  Zwei ");
+        Text copy = new Text(text);
+        assertSame(text, LOWER_CASE_WORDS.apply(text));
+        assertEquals("eins zwei", text.toString());
+        assertEquals("  Eins  Zwei ", copy.toString());
+        assertEquals("eins zwei", LOWER_CASE_WORDS.apply(new Text("  Eins  Zwei ").withRopeStorage()).toString());
+    }
+}
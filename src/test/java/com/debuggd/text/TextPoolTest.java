@@ -0,0 +1,57 @@
+package com.debuggd.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextPoolTest {
+
+    @Test
+    public void invalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new TextPool(0));
+    }
+
+    @Test
+    public void reusesReleasedTexts() {
+        TextPool pool = new TextPool(1);
+        Text first = pool.acquire("eins");
+        assertEquals("eins", first.toString());
+        pool.release(first);
+        pool.release(new Text("zu viel"));
+        assertEquals(1, pool.size());
+
+        Text second = pool.acquire("zwei");
+        assertSame(first, second);
+        assertEquals("zwei", second.toString());
+        assertEquals(0, pool.size());
+        assertEquals("drei", pool.acquire("drei").toString());
+    }
+
+    @Test
+    public void steadyLoopReusesTexts() {
+        String[] records = new String[100];
+        for (int i = 0; i < records.length; i++)
+            records[i] = "  Datensatz " + i + " ;  Name=Müller ; Stadt=KÖLN  ";
+        // ein Text, dessen Puffer für jeden Datensatz reicht
+        byte[] buffer = new byte[64];
+        Text pooled = new Text(Latin1Storage.wrap(buffer));
+        TextPool pool = new TextPool(1);
+        pool.release(pooled);
+        for (int round = 0; round < 3; round++) {
+            for (String record : records) {
+                Text text = pool.acquire(record);
+                assertSame(pooled, text);
+                text.trim().toLowerCase().replaceAll(" ;", ";");
+                String expected = record.trim().toLowerCase().replace(" ;", ";");
+                assertEquals(expected.indexOf("name="), text.indexOf("name="));
+                assertEquals(2, text.count(";"));
+                text.setLength(text.length() - 1);
+                // alle Änderungen landen im selben Puffer
+                assertTrue(new String(buffer, StandardCharsets.ISO_8859_1).contains(text), text.toString());
+                pool.release(text);
+            }
+        }
+    }
+}
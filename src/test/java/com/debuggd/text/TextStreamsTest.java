@@ -0,0 +1,90 @@
+package com.debuggd.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextStreamsTest {
+
+    /**
+     * Hands out at most {@code chunk} chars per read, so that every boundary gets a chance to split a match.
+     */
+    private static Reader chunked(String str, int chunk) {
+        return new StringReader(str) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+    @Test
+    public void replaceAll() throws IOException {
+        String input = "tttxtttt abcabcab";
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            StringWriter out = new StringWriter();
+            TextStreams.replaceAll(chunked(input, chunk), out, "ttt", "T");
+            assertEquals("TxTt abcabcab", out.toString());
+
+            out = new StringWriter();
+            TextStreams.deleteAll(chunked(input, chunk), out, "abc");
+            assertEquals("tttxtttt ab", out.toString());
+        }
+
+        StringWriter out = new StringWriter();
+        TextStreams.replaceAll(new StringReader("abc"), out, "", "x");
+        assertEquals("abc", out.toString());
+    }
+
+    @Test
+    public void matchesAcrossBuffers() throws IOException {
+        StringBuilder input = new StringBuilder();
+        while (input.length() < 3 * TextStreams.BUFFER_SIZE)
+            input.append("Zeile ").append(input.length()).append('\n');
+        String expected = new Text(input.toString()).replaceAll("\nZeile", "|").toString();
+
+        StringWriter out = new StringWriter();
+        TextStreams.replaceAll(new StringReader(input.toString()), out, "\nZeile", "|");
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void perCharOperations() throws IOException {
+        String input = "  eins\r\n  zwei \t drei  ";
+        for (int chunk = 1; chunk <= 3; chunk++) {
+            StringWriter out = new StringWriter();
+            TextStreams.normalizeWhiteSpaces(chunked(input, chunk), out);
+            assertEquals(" eins zwei drei ", out.toString());
+
+            out = new StringWriter();
+            TextStreams.toSingleLine(chunked(input, chunk), out);
+            assertEquals("  eins  zwei \t drei  ", out.toString());
+
+            out = new StringWriter();
+            TextStreams.filter(chunked(input, chunk), out, c -> c != 'e');
+            assertEquals("  ins\r\n  zwi \t dri  ", out.toString());
+
+            out = new StringWriter();
+            TextPipeline.builder().trim().normalizeWhiteSpaces().build().apply(chunked(input, chunk), out);
+            assertEquals("eins zwei drei", out.toString());
+        }
+    }
+
+    @Test
+    public void channels() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TextStreams.run(Channels.newChannel(new ByteArrayInputStream("Grüße aus Köln".getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(bytes), StandardCharsets.UTF_8,
+                (in, out) -> TextStreams.replaceAll(in, out, "ö", "oe"));
+        assertEquals("Grüße aus Koeln", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
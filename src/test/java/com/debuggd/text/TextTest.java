@@ -2,6 +2,14 @@ package com.debuggd.text;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,6 +28,22 @@ public class TextTest {
         assertEquals("dasisteintest", t.filter(Character::isLetter).toString());
     }
 
+    @Test
+    public void deleteDigitsAndLetters() {
+        assertEquals("abc-def ", new Text("a1b2c3-def 42").deleteDigits().toString());
+        assertEquals("12 -3", new Text("a1b2 -c3").deleteLetters().toString());
+        assertEquals("", new Text("1234").deleteDigits().toString());
+    }
+
+    @Test
+    public void deleteLeadingAndTrailing() {
+        assertEquals("text--", new Text("-_-text--").deleteLeading('-', '_').toString());
+        assertEquals("-_-text", new Text("-_-text--").deleteTrailing('-').toString());
+        assertEquals("", new Text("----").deleteLeading('-').toString());
+        assertEquals("", new Text("----").deleteTrailing('-').toString());
+        assertEquals("-text-", new Text("-text-").deleteLeading().toString());
+    }
+
     @Test
     public void enumerateIndices() {
         Text text = new Text("0");
@@ -37,6 +61,53 @@ public class TextTest {
         assertTrue(text.contains("t to"));
     }
 
+    @Test
+    public void queries() {
+        Text text = new Text("Text to Test");
+        assertTrue(text.equals("Text to Test"));
+        assertFalse(text.equals("Text to Tes"));
+        assertFalse(text.equals((String) null));
+        assertTrue(text.equalsIgnoreCase("TEXT TO TEST"));
+        assertFalse(text.equalsIgnoreCase("TEXT TO TESTS"));
+        assertTrue(text.containsIgnoreCase("t TO t"));
+        assertFalse(text.containsIgnoreCase("test to"));
+        assertFalse(text.containsIgnoreCase(null));
+        assertTrue(text.endsWith("Test"));
+        assertFalse(text.endsWith("test"));
+        assertFalse(text.endsWith("more than the Text to Test"));
+        assertEquals(4, text.indexOf(' '));
+        assertEquals(-1, text.indexOf('z'));
+        assertEquals("TEXT TO TEST", new Text(text).toUpperCase().toString());
+        assertEquals("", new Text().toUpperCase().toString());
+    }
+
+    @Test
+    public void queriesDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        Text text = new Text("  Eine Zeile, wie sie tausendfach gelesen wird  ");
+        int hits = 0;
+        // die erste Runde lädt Klassen und übersetzt, erst danach wird gemessen
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < 10_000; i++) {
+                if (text.equals("  Eine Zeile"))
+                    hits++;
+                if (text.equalsIgnoreCase("  EINE ZEILE, WIE SIE TAUSENDFACH GELESEN WIRD  "))
+                    hits++;
+                if (text.containsIgnoreCase("TAUSENDFACH"))
+                    hits++;
+                if (text.endsWith("wird  "))
+                    hits++;
+                hits += text.indexOf(',');
+            }
+            // weniger als ein Byte pro Durchlauf heißt: die Aufrufe selbst allokieren nichts
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            assertTrue(round == 0 || allocated < 10_000, allocated + " bytes");
+        }
+        assertEquals(3 * 10_000 * 15, hits);
+    }
+
     @Test
     public void toSingleLine() {
         Text text = new Text("\n\rtext \u000b\u0085\u2029to\u000c \u2028test\r\n");
@@ -51,6 +122,38 @@ public class TextTest {
         assertEquals("textt", text.replaceUsingPattern(Pattern.compile("est$"), null).toString());
     }
 
+    @Test
+    public void replacePatternLikeString() {
+        String content = "Name=Müller; Stadt=Köln; PLZ=50667; leer=;";
+        Pattern pattern = Pattern.compile("(?<key>\\w+)=(\\w*)(;)");
+        String[] replacements = {"$2", "${key}:$2$3", "\\$1", "$1\\\\", "<$0>", "$11", "$3$31", "x"};
+        for (String replacement : replacements)
+            assertEquals(content.replaceAll(pattern.pattern(), replacement),
+                    new Text(content).replaceUsingPattern(pattern, replacement).toString(), replacement);
+        for (String invalid : new String[]{"$", "\\", "${key", "$x", "${name}"})
+            assertThrows(IllegalArgumentException.class, () -> new Text(content).replaceUsingPattern(pattern, invalid));
+        assertThrows(IndexOutOfBoundsException.class, () -> new Text(content).replaceUsingPattern(pattern, "$4"));
+
+        // die Flags des kompilierten Patterns gelten, sie gingen früher mit pattern() verloren
+        assertEquals("x x", new Text("a A").replaceUsingPattern(Pattern.compile("a", Pattern.CASE_INSENSITIVE), "x")
+                .toString());
+    }
+
+    @Test
+    public void replaceEachMatch() {
+        Text text = new Text("3 Äpfel, 12 Birnen, 7 Kiwis");
+        text.replaceEachMatch(Pattern.compile("\\d+"), match -> Integer.toString(Integer.parseInt(match.group()) * 2));
+        assertEquals("6 Äpfel, 24 Birnen, 14 Kiwis", text.toString());
+        text.replaceEachMatch(Pattern.compile(" \\p{L}+"), match -> match.start() == 1 ? null : "€");
+        assertEquals("6, 24€, 14€", text.toString());
+
+        // ein Replacer darf selbst ersetzen, jeder Aufruf hat seinen eigenen Puffer
+        Text inner = new Text("a-b");
+        text.replaceEachMatch(Pattern.compile("€"), match -> inner.replaceUsingPattern(Pattern.compile("-"), "+"));
+        assertEquals("6, 24a+b, 14a+b", text.toString());
+        assertSame(text, text.replaceEachMatch(null, match -> "x").replaceEachMatch(Pattern.compile("x"), null));
+    }
+
     @Test
     public void normalizeWhiteSpaces() {
         String[] spaces = new String[]{
@@ -110,6 +213,14 @@ public class TextTest {
         text = new Text("tttt");
         assertEquals("t", text.replaceAll("ttt", "").toString());
 
+        // Ersetzungen, die länger oder kürzer als 'replaceWhat' sind
+        text = new Text("a-b-c-");
+        assertEquals("a-->b-->c-->", text.replaceAll("-", "-->").toString());
+        text = new Text("aXYZbXYZXYZc");
+        assertEquals("a1b11c", text.replaceAll("XYZ", "1").toString());
+        text = new Text("<p>x</p>");
+        assertEquals("<p>x</p>", text.replaceAll("<P>", "<div>").toString());
+
         // ungültige 'replaceWhat' werden nicht akzeptiert
         text = new Text("tttt");
         assertEquals("tttt", text.replaceAll(null, "xx").toString());
@@ -134,6 +245,26 @@ public class TextTest {
 
     }
 
+    @Test
+    public void primitiveIndices() {
+        Text text = new Text("yxxxxy");
+        assertArrayEquals(new int[]{1, 3}, text.indexArrayOf("xx"));
+        assertArrayEquals(new int[]{}, text.indexArrayOf(null));
+        assertArrayEquals(new int[]{0, 5}, text.indexStreamOf("y").toArray());
+        assertEquals(0, text.indexStreamOf("").count());
+        int[] sum = {0};
+        text.forEachIndexOf("x", i -> sum[0] += i);
+        assertEquals(1 + 2 + 3 + 4, sum[0]);
+
+        // viele Treffer: das Array wächst, der Stream sucht nur so weit wie nötig
+        Text dense = new Text(String.join("", java.util.Collections.nCopies(10_000, "ab")));
+        int[] indices = dense.indexArrayOf("b");
+        assertEquals(10_000, indices.length);
+        assertEquals(19_999, indices[indices.length - 1]);
+        assertArrayEquals(dense.indicesOf("b").stream().mapToInt(Integer::intValue).toArray(), indices);
+        assertEquals(3, dense.indexStreamOf("ba").skip(1).findFirst().getAsInt());
+    }
+
     @Test
     public void replaceLast() {
         Text text = new Text("text to test");
@@ -166,6 +297,8 @@ public class TextTest {
         assertEquals("ex o es", text.deleteAll("t").toString());
         text = new Text("ttttttttt");
         assertEquals("", text.deleteAll("t").toString());
+        text = new Text("tttxtttt");
+        assertEquals("xt", text.deleteAll("ttt").toString());
     }
 
     @Test
@@ -214,6 +347,17 @@ public class TextTest {
         assertEquals(0, text.count("textz"));
         text = new Text("tt");
         assertEquals(2, text.count("t"));
+
+        // Treffer hinter dem Ende werden nach trimRight und deleteAfter nicht mehr gezählt, auch in Kopien
+        text = new Text(new StringBuilder("ab ab ab | ab ab   "));
+        Text copy = new Text(text);
+        assertEquals(5, text.trimRight().count("ab"));
+        assertEquals(4, text.count("ab "));
+        assertEquals(3, text.deleteAfter(" |").count("ab"));
+        assertEquals(4, copy.trimRight().count("ab "));
+        assertEquals(3, copy.deleteAfter(" |").count("ab"));
+        assertEquals("[0, 3, 6]", copy.indicesOf("ab").toString());
+        assertEquals(0, copy.count("| "));
     }
 
     @Test
@@ -275,6 +419,73 @@ public class TextTest {
         assertEquals("trimmed", text.trim().toString());
     }
 
+    @Test
+    public void editsAfterTrimming() {
+        Text text = new Text("   text to test   ").trim();
+        assertEquals(12, text.length());
+        assertEquals('t', text.firstChar());
+        assertEquals("to", text.subSequence(5, 7).toString());
+        assertEquals(" to test", text.deleteFirst("text").toString());
+        text.append('!');
+        assertEquals(" to test!", text.toString());
+        assertEquals("> to test!", text.prepend(">").toString());
+        assertEquals(">to test!", text.deleteCharAt(1).toString());
+        assertEquals(">to !", text.delete(4, 8).toString());
+        assertEquals(-1, text.indexOf("test"));
+        assertThrows(StringIndexOutOfBoundsException.class, () -> new Text(" x ").trim().charAt(1));
+    }
+
+    @Test
+    public void ropeStorage() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++)
+            sb.append(i % 7 == 0 ? " needle " : "hay");
+        Text flat = new Text(sb.toString());
+        Text rope = new Text(sb.toString()).withRopeStorage();
+        assertEquals(flat.toString(), rope.toString());
+        assertEquals(flat.count("needle"), rope.count("needle"));
+        assertEquals(flat.lastIndexOf("le hay"), rope.lastIndexOf("le hay"));
+        assertEquals(flat.indicesOf("yh"), rope.indicesOf("yh"));
+
+        for (int i = 0; i < 200; i++) {
+            int offset = (i * 7919) % flat.length();
+            flat.insert("<" + i + ">", offset);
+            rope.insert("<" + i + ">", offset);
+            flat.delete(offset / 2, offset / 2 + 3);
+            rope.delete(offset / 2, offset / 2 + 3);
+        }
+        assertEquals(flat.toString(), rope.toString());
+        assertEquals(flat.replaceFirst("needle", "pin").toString(), rope.replaceFirst("needle", "pin").toString());
+        assertEquals(flat.replaceAll("hay", "straw").toString(), rope.replaceAll("hay", "straw").toString());
+        assertEquals(flat.deleteAll("needle").toString(), rope.deleteAll("needle").toString());
+        assertEquals(flat.trim().toUpperCase().toString(), rope.trim().toUpperCase().toString());
+        assertEquals(flat.deleteLetters().toString(), rope.deleteLetters().toString());
+
+        Text copy = new Text(rope);
+        copy.append("tail");
+        assertEquals(flat.toString(), rope.toString());
+        assertTrue(copy.endsWith("tail"));
+
+        // einzeln angehängte Zeichen, dazwischen gelesen, kopiert und bearbeitet
+        StringBuilder expected = new StringBuilder();
+        Text built = new Text().withRopeStorage();
+        for (int i = 0; i < 3000; i++) {
+            char c = (char) ('a' + i % 26);
+            expected.append(c);
+            built.append(c);
+            assertEquals(c, built.lastChar());
+            if (i % 700 == 0) {
+                Text snapshot = new Text(built);
+                built.append('!');
+                expected.append('!');
+                assertEquals(expected.length() - 1, snapshot.length());
+                assertEquals(expected.indexOf("z!"), built.indexOf("z!"));
+            }
+        }
+        assertEquals(expected.toString(), built.toString());
+        assertEquals(expected.insert(5, '-').toString(), built.insert("-", 5).toString());
+    }
+
     @Test
     public void emtpyConstructorTest() {
         assertEquals("", new Text().toString());
@@ -297,6 +508,199 @@ public class TextTest {
         assertEquals("test", textCopy.toString());
     }
 
+    @Test
+    void copiesAreIndependent() {
+        Text source = new Text("text to test");
+        Text upper = new Text(source).toUpperCase();
+        Text trimmed = new Text(source).deleteFirst("text ");
+        Text appended = new Text(source);
+        appended.append("!");
+        Text after = Text.textAfter(source, "to");
+        source.replaceAll("t", "d");
+        assertEquals("dexd do desd", source.toString());
+        assertEquals("TEXT TO TEST", upper.toString());
+        assertEquals("to test", trimmed.toString());
+        assertEquals("text to test!", appended.toString());
+        assertEquals(" tst", after.filter(c -> c != 'e').toString());
+        assertEquals("dexd do desd", source.toString());
+    }
+
+    @Test
+    void copiesOfCallerBuilders() {
+        // der Builder des Aufrufers wird weiter beschrieben, auch nachdem der Text kopiert wurde
+        StringBuilder builder = new StringBuilder("text to test");
+        Text text = new Text(builder);
+        Text copy = new Text(text);
+        text.toUpperCase();
+        assertEquals("TEXT TO TEST", builder.toString());
+        text.insert("!", 4);
+        assertEquals("TEXT! TO TEST", builder.toString());
+        assertEquals("text to test", copy.toString());
+
+        // Änderungen des Aufrufers am Builder erreichen Kopien nicht
+        builder.setLength(0);
+        builder.append("neu");
+        assertEquals("text to test", copy.toString());
+        StringBuilder other = new StringBuilder("text to test");
+        Text after = Text.textAfter(new Text(other), "text ");
+        other.setCharAt(5, 'T');
+        assertEquals("to test", after.toString());
+    }
+
+    @Test
+    void reset() {
+        Text text = new Text("erster Datensatz");
+        Text copy = new Text(text);
+        assertEquals("zweiter", text.reset("zweiter").toString());
+        assertEquals("erster Datensatz", copy.toString());
+        assertEquals("Köln → Bonn", text.reset(new StringBuilder("Köln → Bonn")).toString());
+        assertEquals("dritter", text.reset("dritter").toString());
+        assertEquals("dritter", text.reset(text).toString());
+        assertEquals("", text.reset(null).toString());
+
+        text.reset("abcdef").setLength(3);
+        assertEquals("abc", text.toString());
+        assertEquals("abc\0\0", text.setLength(5).toString());
+        assertEquals("", text.setLength(0).toString());
+        text.append("neu");
+        assertEquals("neu", text.toString());
+        assertThrows(StringIndexOutOfBoundsException.class, () -> text.setLength(-1));
+    }
+
+    @Test
+    void editTransactions() {
+        // alle Positionen beziehen sich auf den Text vor dem Commit, egal in welcher Reihenfolge
+        Text text = new Text("Hallo schöne Welt");
+        Text copy = new Text(text);
+        TextEdit edit = text.edit().replace(13, 17, "Köln").insert("!", 17).delete(5, 12).insert("<", 0)
+                .insert(">", 0).insert(",", 5);
+        assertEquals(6, edit.size());
+        assertEquals("Hallo schöne Welt", text.toString());
+        assertSame(text, edit.commit());
+        assertEquals("<>Hallo, Köln!", text.toString());
+        assertEquals("Hallo schöne Welt", copy.toString());
+        assertEquals(0, edit.size());
+
+        // danach gelten die Positionen des neuen Texts
+        assertEquals("<>Hallo, Kölle!", edit.replace(11, 13, "lle").commit().toString());
+        assertSame(text, edit.commit());
+
+        TextEdit overlapping = text.edit().delete(2, 6).replace(5, 7, "x");
+        assertThrows(IllegalStateException.class, overlapping::commit);
+        assertThrows(IllegalStateException.class, () -> text.edit().delete(2, 6).insert("x", 4).commit());
+        assertEquals("<>Hallo, Kölle!", text.toString());
+        assertEquals("xKölle!", text.edit().delete(0, 9).insert("x", 9).delete(9, 9).commit().toString());
+
+        TextEdit stale = text.edit().insert("x", 0);
+        text.append("?");
+        assertThrows(IllegalStateException.class, stale::commit);
+        assertThrows(StringIndexOutOfBoundsException.class, () -> text.edit().delete(3, text.length() + 1));
+        assertThrows(StringIndexOutOfBoundsException.class, () -> text.edit().insert("x", -1));
+        assertThrows(IllegalArgumentException.class, () -> text.edit().replace(0, 1, null));
+
+        // zufällige Änderungen, von hinten nach vorn einzeln ausgeführt, müssen dasselbe ergeben
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            String content = round % 3 == 0 ? "Straße → Ärger" : "abcdefghij abcdefghij abcdefghij";
+            Text batched = round % 4 == 1 ? new Text(content).withRopeStorage() : new Text(content);
+            StringBuilder expected = new StringBuilder(content);
+            TextEdit randomEdit = batched.edit();
+            int position = content.length();
+            while (position > 0) {
+                int end = random.nextInt(position + 1), start = random.nextInt(end + 1);
+                String str = random.nextBoolean() ? "" : random.nextBoolean() ? "€" + round : "xy";
+                expected.replace(start, end, str);
+                if (random.nextBoolean())
+                    randomEdit.replace(start, end, str);
+                else
+                    randomEdit.delete(start, end).insert(str, start);
+                position = start - 1;
+            }
+            assertEquals(expected.toString(), randomEdit.commit().toString());
+        }
+    }
+
+    @Test
+    void latin1Texts() {
+        // Latin-1 wird kompakt gespeichert, breitere Zeichen schalten um, ohne dass man es merkt
+        Text text = new Text("Grüße aus Köln");
+        Text copy = new Text(text);
+        text.append(" €");
+        assertEquals("Grüße aus Köln €", text.toString());
+        assertEquals("Grüße aus Köln", copy.toString());
+
+        assertEquals("ÄÖÜ Ÿ", new Text("äöü ÿ").toUpperCase().toString());
+        assertEquals("Ÿ!", new Text("ÿ!").toUpperCase(0).toString());
+        assertEquals("x → y", new Text("x y").insert("→ ", 2).toString());
+        assertEquals("a–b–c", new Text("a-b-c").replaceAll("-", "–").toString());
+        assertEquals("a·b", new Text("a-b").replaceFirst("-", "·").toString());
+        assertEquals(-1, new Text("äöü").indexOf("ö€"));
+
+        Text edited = new Text("  zwei  Wörter  ");
+        edited.normalizeWhiteSpaces().trim().replaceAll("Wörter", "längere Wörter").deleteFirstChar();
+        edited.append('!');
+        assertEquals("wei längere Wörter!", edited.trimToSize().toString());
+        assertEquals(TextPipeline.builder().toUpperCase().build().apply("ÿ"), new Text("ÿ").toUpperCase().toString());
+    }
+
+    @Test
+    void latin1Kernels() {
+        // die Tabellen für Latin-1 müssen dasselbe liefern wie der allgemeine Weg über ein breites Zeichen
+        StringBuilder all = new StringBuilder();
+        for (char c = 0; c <= 0xFF; c++)
+            all.append(c).append(c).append(' ').append(c);
+        String latin1 = all.toString();
+        List<UnaryOperator<Text>> operations = Arrays.asList(Text::toLowerCase, Text::toUpperCase,
+                Text::normalizeWhiteSpaces, Text::toSingleLine, Text::deleteDigits, Text::deleteLetters,
+                text -> text.deleteNonAlphaNumeric(true), text -> text.filter(c -> c % 3 == 0));
+        for (UnaryOperator<Text> operation : operations) {
+            String wide = operation.apply(new Text(latin1 + "€")).toString();
+            assertEquals(wide.substring(0, wide.length() - 1), operation.apply(new Text(latin1)).toString());
+        }
+
+        Text text = new Text(latin1);
+        Text inflated = new Text(latin1 + "€");
+        for (char c = 0; c <= 0x100; c++) {
+            assertEquals(inflated.indexOf(c), text.indexOf(c));
+            assertEquals(inflated.count(c), text.count(c));
+        }
+        assertEquals(-1, text.indexOf('€'));
+        assertEquals(1, inflated.count('€'));
+    }
+
+    @Test
+    void mappedFiles() throws IOException {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 200_000)
+            content.append("Grüße ").append(content.length()).append(" \uD83D\uDE00\n");
+        Path file = Files.createTempFile("mapped", ".txt");
+        // a mapped file cannot be deleted on every platform while it is still mapped
+        file.toFile().deleteOnExit();
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+        Text mapped = Text.map(file, StandardCharsets.UTF_8);
+        Text inMemory = new Text(content.toString());
+        assertEquals(inMemory.length(), mapped.length());
+        assertEquals(inMemory.toString(), mapped.toString());
+        assertEquals(inMemory.indicesOf("ße 1"), mapped.indicesOf("ße 1"));
+        assertEquals(inMemory.count("\uDE00\nG"), mapped.count("\uDE00\nG"));
+        assertEquals(inMemory.lastIndexOf("Grüße"), mapped.lastIndexOf("Grüße"));
+        assertTrue(Pattern.compile("Grüße 19\\d+").matcher(mapped).find());
+
+        // die Datei bleibt unverändert, Änderungen landen im Speicher
+        Text copy = new Text(mapped);
+        mapped.replaceAll("Grüße", "Hallo");
+        assertEquals(inMemory.replaceAll("Grüße", "Hallo").toString(), mapped.toString());
+        assertEquals(content.toString(), copy.toString());
+        assertEquals(content.toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+        Path latin1 = Files.createTempFile("mapped", ".txt");
+        latin1.toFile().deleteOnExit();
+        Files.write(latin1, new byte[]{'a', (byte) 0xE4, 'b'});
+        assertEquals("aäb", Text.map(latin1, StandardCharsets.ISO_8859_1).toString());
+        assertEquals("a\uFFFDb", Text.map(latin1, StandardCharsets.UTF_8).toString());
+        assertThrows(IllegalArgumentException.class, () -> Text.map(latin1, StandardCharsets.UTF_16));
+    }
+
     @Test
     public void isNumber() {
         assertTrue(Text.isNumber("0"));
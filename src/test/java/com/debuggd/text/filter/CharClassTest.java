@@ -0,0 +1,47 @@
+package com.debuggd.text.filter;
+
+import com.debuggd.text.Text;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharClassTest {
+
+    @Test
+    public void sameAsCharacter() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            char ch = (char) c;
+            assertEquals(Character.isDigit(ch), CharClass.DIGITS.contains(ch));
+            assertEquals(Character.isLetter(ch), CharClass.LETTERS.accept(ch));
+            assertEquals(Character.isWhitespace(ch), CharClass.WHITESPACE.contains(ch));
+            assertEquals(Character.isWhitespace(ch) || Character.isSpaceChar(ch)
+                    || ch == '\u180E' || ch == '\u200B' || ch == '\uFEFF', Text.isSpace(ch));
+        }
+    }
+
+    @Test
+    public void composition() {
+        CharClass vowels = CharClass.of('a', 'e', 'i', 'o', 'u');
+        CharClass lower = CharClass.range('a', 'z');
+        CharClass consonants = lower.and(vowels.negate());
+        assertTrue(consonants.contains('b'));
+        assertFalse(consonants.contains('a'));
+        assertFalse(consonants.contains('B'));
+        assertEquals(lower, consonants.or(vowels));
+        assertEquals(CharClass.LETTERS_OR_DIGITS, CharClass.LETTERS.or(CharClass.DIGITS));
+        assertEquals(CharClass.of(), CharClass.DIGITS.and(CharClass.LETTERS));
+        assertTrue(CharClass.DIGITS.or(c -> c == '-').contains('-'));
+        assertEquals(1, consonants.latin1Flag((byte) 'b'));
+        assertEquals(0, consonants.latin1Flag((byte) 'a'));
+        assertEquals(1, CharClass.LETTERS.latin1Flag((byte) '\u00e9'));
+        assertThrows(IllegalArgumentException.class, () -> CharClass.compile(null));
+    }
+
+    @Test
+    public void filters() {
+        TextFilter compiled = CharClass.compile(c -> c != 'e');
+        assertEquals("Txt to tst", new Text("Text to test").filter(compiled).toString());
+        assertEquals("47.11", new Text("a4b7.c11").filter(new DigitsOnlyWithExceptionTextFilter('.')).toString());
+        assertEquals("471", new Text("a4b7c1").filter(new DigitsOnlyTextFilter()).toString());
+    }
+}